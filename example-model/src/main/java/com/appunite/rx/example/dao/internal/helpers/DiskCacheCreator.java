@@ -16,86 +16,53 @@
 
 package com.appunite.rx.example.dao.internal.helpers;
 
+import com.appunite.cache.disk.AtomicFile;
+import com.appunite.cache.disk.FsyncPolicy;
+import com.appunite.cache.disk.Serializer;
 import com.appunite.rx.subjects.CacheSubject;
-import com.google.gson.Gson;
-import com.google.gson.JsonIOException;
-import com.google.gson.JsonSyntaxException;
-import com.google.gson.stream.JsonWriter;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.lang.reflect.Type;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-@SuppressWarnings("TryFinallyCanBeTryWithResources")
 class DiskCacheCreator<T> implements CacheSubject.CacheCreator<T> {
 
     @Nonnull
-    private final Gson gson;
+    private final Serializer<T> serializer;
     @Nonnull
-    private final Type typeOfT;
-    @Nonnull
-    private final File file;
-
-    private final Object lock = new Object();
+    private final AtomicFile file;
 
-    DiskCacheCreator(@Nonnull Gson gson,
-                     @Nonnull Type typeOfT,
-                     @Nonnull File file) {
-        this.gson = gson;
-        this.typeOfT = typeOfT;
-        this.file = file;
+    DiskCacheCreator(@Nonnull Serializer<T> serializer,
+                     @Nonnull File file,
+                     @Nonnull FsyncPolicy fsyncPolicy) {
+        this.serializer = serializer;
+        this.file = new AtomicFile(file, fsyncPolicy);
     }
 
     @Nullable
     @Override
     public T readFromCache() {
-        synchronized (lock) {
-            try {
-                final BufferedReader bufferedReader = new BufferedReader(
-                        new InputStreamReader(
-                                new FileInputStream(file)));
-                try {
-                    return gson.fromJson(bufferedReader, typeOfT);
-                } finally {
-                    bufferedReader.close();
-                }
-            } catch (IOException | JsonIOException | JsonSyntaxException ignore) {
-                System.out.print(ignore);
-                return null;
-            }
+        try {
+            final byte[] data = file.read();
+            return data == null ? null : serializer.deserialize(data);
+        } catch (IOException ignore) {
+            System.out.print(ignore);
+            return null;
         }
     }
 
     @Override
     public void writeToCache(@Nullable T data) {
-        synchronized (lock) {
-            if (data == null) {
-                if (file.exists()) {
-                    //noinspection ResultOfMethodCallIgnored
-                    file.delete();
-                }
-            }
-            try {
-                final BufferedWriter bufferedWriter = new BufferedWriter(
-                        new OutputStreamWriter(
-                                new FileOutputStream(file)));
-                try {
-                    gson.toJson(data, typeOfT, new JsonWriter(bufferedWriter));
-                } finally {
-                    bufferedWriter.close();
-                }
-            } catch (IOException | JsonIOException ignore) {
-                System.out.print(ignore);
-            }
+        if (data == null) {
+            file.delete();
+            return;
+        }
+        try {
+            file.write(serializer.serialize(data));
+        } catch (IOException ignore) {
+            System.out.print(ignore);
         }
     }
 }
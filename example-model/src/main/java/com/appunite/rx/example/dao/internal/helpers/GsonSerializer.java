@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.example.dao.internal.helpers;
+
+import com.appunite.cache.disk.Serializer;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+import javax.annotation.Nonnull;
+
+class GsonSerializer<T> implements Serializer<T> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Nonnull
+    private final Gson gson;
+    @Nonnull
+    private final Type typeOfT;
+
+    GsonSerializer(@Nonnull Gson gson, @Nonnull Type typeOfT) {
+        this.gson = gson;
+        this.typeOfT = typeOfT;
+    }
+
+    @Nonnull
+    @Override
+    public byte[] serialize(@Nonnull T value) throws IOException {
+        try {
+            return gson.toJson(value, typeOfT).getBytes(UTF_8);
+        } catch (JsonParseException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public T deserialize(@Nonnull byte[] data) throws IOException {
+        final T value;
+        try {
+            value = gson.fromJson(new String(data, UTF_8), typeOfT);
+        } catch (JsonParseException e) {
+            throw new IOException(e);
+        }
+        if (value == null) {
+            throw new IOException("Empty value");
+        }
+        return value;
+    }
+}
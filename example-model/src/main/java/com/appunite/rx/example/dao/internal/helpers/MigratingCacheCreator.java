@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.example.dao.internal.helpers;
+
+import com.appunite.rx.subjects.CacheSubject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Moves value from legacy cache to new cache on first access
+ */
+class MigratingCacheCreator<T> implements CacheSubject.CacheCreator<T> {
+
+    @Nonnull
+    private final CacheSubject.CacheCreator<T> cacheCreator;
+    @Nonnull
+    private final CacheSubject.CacheCreator<T> legacyCacheCreator;
+    private volatile boolean migrated;
+
+    MigratingCacheCreator(@Nonnull CacheSubject.CacheCreator<T> cacheCreator,
+                          @Nonnull CacheSubject.CacheCreator<T> legacyCacheCreator) {
+        this.cacheCreator = cacheCreator;
+        this.legacyCacheCreator = legacyCacheCreator;
+    }
+
+    @Nullable
+    @Override
+    public T readFromCache() {
+        final T value = cacheCreator.readFromCache();
+        if (value != null || migrated) {
+            return value;
+        }
+        synchronized (this) {
+            if (migrated) {
+                return cacheCreator.readFromCache();
+            }
+            final T legacy = legacyCacheCreator.readFromCache();
+            if (legacy != null) {
+                cacheCreator.writeToCache(legacy);
+            }
+            legacyCacheCreator.writeToCache(null);
+            migrated = true;
+            return legacy;
+        }
+    }
+
+    @Override
+    public void writeToCache(@Nullable T data) {
+        cacheCreator.writeToCache(data);
+        if (!migrated) {
+            synchronized (this) {
+                legacyCacheCreator.writeToCache(null);
+                migrated = true;
+            }
+        }
+    }
+}
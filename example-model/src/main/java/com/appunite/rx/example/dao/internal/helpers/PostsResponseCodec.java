@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.example.dao.internal.helpers;
+
+import com.appunite.cache.disk.BinaryCodec;
+import com.appunite.cache.disk.BinaryReader;
+import com.appunite.cache.disk.BinaryWriter;
+import com.appunite.cache.disk.PageCodec;
+import com.appunite.rx.example.dao.posts.model.Post;
+import com.appunite.rx.example.dao.posts.model.PostsResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+class PostsResponseCodec implements BinaryCodec<PostsResponse>, PageCodec<PostsResponse, Post> {
+
+    @Override
+    public void encode(@Nonnull PostsResponse value, @Nonnull BinaryWriter writer) throws IOException {
+        encodeHeader(value, writer);
+        final List<Post> items = value.items();
+        writer.writeVarint(items.size());
+        for (Post post : items) {
+            encodeItem(post, writer);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public PostsResponse decode(@Nonnull BinaryReader reader) throws IOException {
+        final String title = nonNull(reader.readString());
+        final String nextToken = reader.readString();
+        final int size = reader.readInt();
+        final List<Post> items = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            items.add(decodeItem(reader));
+        }
+        return new PostsResponse(title, items, nextToken);
+    }
+
+    @Nonnull
+    @Override
+    public List<Post> items(@Nonnull PostsResponse value) {
+        return value.items();
+    }
+
+    @Override
+    public void encodeHeader(@Nonnull PostsResponse value, @Nonnull BinaryWriter writer) throws IOException {
+        writer.writeString(value.title());
+        writer.writeString(value.nextToken());
+    }
+
+    @Override
+    public void encodeItem(@Nonnull Post item, @Nonnull BinaryWriter writer) throws IOException {
+        writer.writeString(item.id());
+        writer.writeString(item.name());
+    }
+
+    @Nonnull
+    @Override
+    public Post decodeItem(@Nonnull BinaryReader reader) throws IOException {
+        return new Post(nonNull(reader.readString()), nonNull(reader.readString()));
+    }
+
+    @Nonnull
+    @Override
+    public PostsResponse decode(@Nonnull BinaryReader headerReader, @Nonnull List<Post> items) throws IOException {
+        final String title = nonNull(headerReader.readString());
+        final String nextToken = headerReader.readString();
+        return new PostsResponse(title, items, nextToken);
+    }
+
+    @Nonnull
+    private static String nonNull(@Nullable String value) throws IOException {
+        if (value == null) {
+            throw new IOException("Unexpected null");
+        }
+        return value;
+    }
+}
@@ -30,6 +30,7 @@ import com.appunite.rx.operators.MoreOperators;
 import com.appunite.rx.operators.OperatorMergeNextToken;
 import com.appunite.rx.subjects.CacheSubject;
 
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -37,10 +38,12 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Singleton;
 
+import okhttp3.ResponseBody;
 import rx.Observable;
 import rx.Observer;
 import rx.Scheduler;
 import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.subjects.PublishSubject;
 
@@ -62,13 +65,17 @@ public class PostsDao {
     private final PublishSubject<Object> loadMoreSubject = PublishSubject.create();
     @Nonnull
     private final CurrentLoggedInUserDao currentLoggedInUserDao;
+    @Nonnull
+    private final PostsResponseDecoder postsResponseDecoder;
 
     public PostsDao(@Nonnull final Scheduler networkScheduler,
                     @Nonnull final PostsService postsService,
                     @Nonnull final CacheProvider cacheProvider,
-                    @Nonnull final CurrentLoggedInUserDao currentLoggedInUserDao) {
+                    @Nonnull final CurrentLoggedInUserDao currentLoggedInUserDao,
+                    @Nonnull final PostsResponseDecoder postsResponseDecoder) {
         this.networkScheduler = networkScheduler;
         this.postsService = postsService;
+        this.postsResponseDecoder = postsResponseDecoder;
         this.currentLoggedInUserDao = currentLoggedInUserDao;
 
         posts = currentLoggedInUserDao
@@ -78,7 +85,7 @@ public class PostsDao {
                     public Observable<ResponseOrError<PostsResponse>> call(@Nonnull CurrentLoggedInUserDao.LoggedInUserDao loggedInUserDao) {
                         return loadMoreSubject.startWith((Object) null)
                                 .lift(loadMorePosts(networkScheduler, postsService, loggedInUserDao))
-                                .compose(CacheSubject.behaviorRefCount(cacheProvider.<PostsResponse>getCacheCreatorForKey("user: " + loggedInUserDao.userId() +", posts", PostsResponse.class)))
+                                .compose(CacheSubject.behaviorLatestRefCount(cacheProvider.<PostsResponse>getCacheCreatorForKey("user: " + loggedInUserDao.userId() +", posts", PostsResponse.class), networkScheduler))
                                 .compose(ResponseOrError.<PostsResponse>toResponseOrErrorObservable())
                                 .compose(MoreOperators.<PostsResponse>repeatOnError(networkScheduler))
                                 .subscribeOn(networkScheduler)
@@ -104,13 +111,15 @@ public class PostsDao {
                     }
                 }));
 
-        cache = new Cache<>(new Cache.CacheProvider<String, PostDao>() {
+        cache = Cache.builder(new Cache.CacheProvider<String, PostDao>() {
             @Nonnull
             @Override
             public PostDao load(@Nonnull String id) {
                 return new PostDao(id);
             }
-        });
+        })
+                .weakValues()
+                .build();
     }
 
     @Nonnull
@@ -200,7 +209,20 @@ public class PostsDao {
                                 new Func1<String, Observable<PostsResponse>>() {
                                     @Override
                                     public Observable<PostsResponse> call(String authorization) {
-                                        return postsService.listPosts(authorization, nextToken);
+                                        return postsService.listPostsStream(authorization, nextToken)
+                                                .flatMap(new Func1<ResponseBody, Observable<PostsResponse>>() {
+                                                    @Override
+                                                    public Observable<PostsResponse> call(final ResponseBody responseBody) {
+                                                        return postsResponseDecoder
+                                                                .decode(new Func0<Reader>() {
+                                                                    @Override
+                                                                    public Reader call() {
+                                                                        return responseBody.charStream();
+                                                                    }
+                                                                })
+                                                                .compose(PostsResponseDecoder.toResponses());
+                                                    }
+                                                });
                                     }
                                 });
                     }
@@ -212,6 +234,15 @@ public class PostsDao {
         return cache.get(id);
     }
 
+    /**
+     * Same as {@link #postDao(String)} but {@link PostDao} is created on network scheduler
+     * if it's not already cached
+     */
+    @Nonnull
+    public Observable<PostDao> postDaoObservable(@Nonnull final String id) {
+        return cache.getAsync(id, networkScheduler);
+    }
+
     @Nonnull
     public Observer<Object> loadMoreObserver() {
         return loadMoreSubject;
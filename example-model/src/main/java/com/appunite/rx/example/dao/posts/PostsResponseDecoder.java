@@ -0,0 +1,274 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.example.dao.posts;
+
+import com.appunite.rx.example.dao.posts.model.Post;
+import com.appunite.rx.example.dao.posts.model.PostsResponse;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import rx.Observable;
+import rx.Observer;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.observables.SyncOnSubscribe;
+
+/**
+ * Decodes {@link PostsResponse} JSON incrementally
+ *
+ * <p>Every post is emitted as soon as it's parsed, respecting backpressure, so next post is
+ * not parsed until it's requested. When whole JSON is parsed, response containing all posts
+ * is emitted. Raw JSON is never kept in memory as a whole.</p>
+ *
+ * <p>Use {@link #toResponses()} to show posts while the rest of response is still
+ * downloaded.</p>
+ */
+public class PostsResponseDecoder {
+
+    private static final String POSTS_FIELD = "posts";
+
+    @Nonnull
+    private final Gson gson;
+    @Nonnull
+    private final JsonParser jsonParser = new JsonParser();
+
+    public PostsResponseDecoder(@Nonnull Gson gson) {
+        this.gson = gson;
+    }
+
+    /**
+     * @param readerFactory creates reader of JSON, reader is closed when decoding finishes or
+     *                      subscriber unsubscribes
+     * @return chunks with every post followed by chunk with whole response
+     */
+    @Nonnull
+    public Observable<Chunk> decode(@Nonnull final Func0<? extends Reader> readerFactory) {
+        return Observable.create(SyncOnSubscribe.createStateful(
+                new Func0<State>() {
+                    @Override
+                    public State call() {
+                        return new State(new JsonReader(readerFactory.call()));
+                    }
+                },
+                new Func2<State, Observer<? super Chunk>, State>() {
+                    @Override
+                    public State call(State state, Observer<? super Chunk> observer) {
+                        try {
+                            next(state, observer);
+                        } catch (IOException | JsonParseException | IllegalStateException e) {
+                            observer.onError(e);
+                        }
+                        return state;
+                    }
+                },
+                new Action1<State>() {
+                    @Override
+                    public void call(State state) {
+                        try {
+                            state.reader.close();
+                        } catch (IOException ignore) {
+                        }
+                    }
+                }));
+    }
+
+    /**
+     * @return transformer that returns response with posts parsed so far after every post and
+     * whole response at the end
+     */
+    @Nonnull
+    public static Observable.Transformer<Chunk, PostsResponse> toResponses() {
+        return new Observable.Transformer<Chunk, PostsResponse>() {
+            @Override
+            public Observable<PostsResponse> call(Observable<Chunk> chunks) {
+                return chunks
+                        .map(new Func1<Chunk, PostsResponse>() {
+                            @Override
+                            public PostsResponse call(Chunk chunk) {
+                                final PostsResponse response = chunk.response();
+                                return response == null ? chunk.partialResponse() : response;
+                            }
+                        });
+            }
+        };
+    }
+
+    /**
+     * @return transformer that returns only whole response
+     */
+    @Nonnull
+    public static Observable.Transformer<Chunk, PostsResponse> toResponse() {
+        return new Observable.Transformer<Chunk, PostsResponse>() {
+            @Override
+            public Observable<PostsResponse> call(Observable<Chunk> chunks) {
+                return chunks
+                        .filter(new Func1<Chunk, Boolean>() {
+                            @Override
+                            public Boolean call(Chunk chunk) {
+                                return chunk.response() != null;
+                            }
+                        })
+                        .map(new Func1<Chunk, PostsResponse>() {
+                            @Override
+                            public PostsResponse call(Chunk chunk) {
+                                return chunk.response();
+                            }
+                        });
+            }
+        };
+    }
+
+    /**
+     * Emit at most one chunk
+     */
+    private void next(@Nonnull State state, @Nonnull Observer<? super Chunk> observer) throws IOException {
+        final JsonReader reader = state.reader;
+        while (true) {
+            switch (state.stage) {
+                case State.START:
+                    reader.beginObject();
+                    state.stage = State.FIELDS;
+                    break;
+                case State.POSTS:
+                    if (reader.hasNext()) {
+                        final Post post = gson.fromJson(reader, Post.class);
+                        state.posts.add(post);
+                        final PostsResponse partial = new PostsResponse(state.title,
+                                Collections.unmodifiableList(new ArrayList<>(state.posts)), null);
+                        observer.onNext(new Chunk(post, partial, null));
+                        return;
+                    }
+                    reader.endArray();
+                    state.stage = State.FIELDS;
+                    break;
+                case State.FIELDS:
+                    if (reader.hasNext()) {
+                        final String name = reader.nextName();
+                        if (POSTS_FIELD.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                            reader.beginArray();
+                            state.title = title(state.fields);
+                            state.stage = State.POSTS;
+                        } else {
+                            state.fields.add(name, jsonParser.parse(reader));
+                        }
+                        break;
+                    }
+                    reader.endObject();
+                    state.fields.add(POSTS_FIELD, new JsonArray());
+                    final PostsResponse fields = gson.fromJson(state.fields, PostsResponse.class);
+                    observer.onNext(new Chunk(null, null,
+                            new PostsResponse(fields.title(), state.posts, fields.nextToken())));
+                    observer.onCompleted();
+                    return;
+                default:
+                    throw new IllegalStateException("Unknown stage " + state.stage);
+            }
+        }
+    }
+
+    /**
+     * Title parsed before posts, so partial responses can show it
+     */
+    @Nonnull
+    private String title(@Nonnull JsonObject fields) {
+        final JsonObject header = new JsonObject();
+        for (Map.Entry<String, JsonElement> field : fields.entrySet()) {
+            header.add(field.getKey(), field.getValue());
+        }
+        header.add(POSTS_FIELD, new JsonArray());
+        final String title = gson.fromJson(header, PostsResponse.class).title();
+        return title == null ? "" : title;
+    }
+
+    public static class Chunk {
+        @Nullable
+        private final Post post;
+        @Nullable
+        private final PostsResponse partialResponse;
+        @Nullable
+        private final PostsResponse response;
+
+        Chunk(@Nullable Post post, @Nullable PostsResponse partialResponse, @Nullable PostsResponse response) {
+            this.post = post;
+            this.partialResponse = partialResponse;
+            this.response = response;
+        }
+
+        /**
+         * @return parsed post or null if it's the last chunk
+         */
+        @Nullable
+        public Post post() {
+            return post;
+        }
+
+        /**
+         * @return response with posts parsed so far or null if it's the last chunk, next
+         * token is not known yet so it's always null
+         */
+        @Nullable
+        public PostsResponse partialResponse() {
+            return partialResponse;
+        }
+
+        /**
+         * @return whole response in the last chunk or null
+         */
+        @Nullable
+        public PostsResponse response() {
+            return response;
+        }
+    }
+
+    private static class State {
+        static final int START = 0;
+        static final int FIELDS = 1;
+        static final int POSTS = 2;
+
+        @Nonnull
+        final JsonReader reader;
+        @Nonnull
+        final JsonObject fields = new JsonObject();
+        @Nonnull
+        final List<Post> posts = new ArrayList<>();
+        @Nonnull
+        String title = "";
+        int stage = START;
+
+        State(@Nonnull JsonReader reader) {
+            this.reader = reader;
+        }
+    }
+}
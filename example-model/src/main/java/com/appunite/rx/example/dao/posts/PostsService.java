@@ -24,12 +24,14 @@ import com.appunite.rx.example.dao.posts.model.PostsResponse;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import okhttp3.ResponseBody;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
 import retrofit2.http.Header;
 import retrofit2.http.POST;
 import retrofit2.http.Path;
 import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 import rx.Observable;
 
 public interface PostsService {
@@ -38,6 +40,14 @@ public interface PostsService {
     @Nonnull
     Observable<PostsResponse> listPosts(@Header("Authorization") String authorization, @Query("next_token") @Nullable String nextToken);
 
+    /**
+     * Same as {@link #listPosts(String, String)} but body is not read, decode it with {@link PostsResponseDecoder}
+     */
+    @GET("v1/posts?limit=50&fields=next_token%2Cposts(id%2Cname)&prettyPrint=false")
+    @Streaming
+    @Nonnull
+    Observable<ResponseBody> listPostsStream(@Header("Authorization") String authorization, @Query("next_token") @Nullable String nextToken);
+
     @GET("v1/posts_ids?limit=50&prettyPrint=false")
     @Nonnull
     Observable<PostsIdsResponse> listPostsIds(@Header("Authorization") String authorization, @Query("next_token") @Nullable String nextToken);
@@ -16,13 +16,16 @@
 
 package com.appunite.rx.example.dao.posts.model;
 
+import com.appunite.gson.GenerateTypeAdapter;
+
 import javax.annotation.Nonnull;
 
+@GenerateTypeAdapter(naming = GenerateTypeAdapter.Naming.LOWER_CASE_WITH_UNDERSCORES)
 public class AddPost {
     @Nonnull
-    private final String name;
+    final String name;
     @Nonnull
-    private final String body;
+    final String body;
 
     public AddPost(@Nonnull String name,
                    @Nonnull String body) {
@@ -16,11 +16,14 @@
 
 package com.appunite.rx.example.dao.posts.model;
 
+import com.appunite.gson.GenerateTypeAdapter;
+
 import javax.annotation.Nonnull;
 
+@GenerateTypeAdapter(naming = GenerateTypeAdapter.Naming.LOWER_CASE_WITH_UNDERSCORES)
 public class Post extends PostId {
     @Nonnull
-    private final String name;
+    final String name;
 
     public Post(@Nonnull String id,
                 @Nonnull String name) {
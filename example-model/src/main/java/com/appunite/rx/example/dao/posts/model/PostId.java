@@ -16,11 +16,14 @@
 
 package com.appunite.rx.example.dao.posts.model;
 
+import com.appunite.gson.GenerateTypeAdapter;
+
 import javax.annotation.Nonnull;
 
+@GenerateTypeAdapter(naming = GenerateTypeAdapter.Naming.LOWER_CASE_WITH_UNDERSCORES)
 public class PostId {
     @Nonnull
-    private final String id;
+    final String id;
 
     public PostId(@Nonnull String id) {
         this.id = id;
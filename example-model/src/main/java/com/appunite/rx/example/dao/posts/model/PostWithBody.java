@@ -16,11 +16,14 @@
 
 package com.appunite.rx.example.dao.posts.model;
 
+import com.appunite.gson.GenerateTypeAdapter;
+
 import javax.annotation.Nonnull;
 
+@GenerateTypeAdapter(naming = GenerateTypeAdapter.Naming.LOWER_CASE_WITH_UNDERSCORES)
 public class PostWithBody extends Post {
     @Nonnull
-    private final String body;
+    final String body;
 
     public PostWithBody(@Nonnull String id,
                         @Nonnull String name,
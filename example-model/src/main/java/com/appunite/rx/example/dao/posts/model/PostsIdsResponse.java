@@ -16,19 +16,22 @@
 
 package com.appunite.rx.example.dao.posts.model;
 
+import com.appunite.gson.GenerateTypeAdapter;
+
 import java.util.List;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+@GenerateTypeAdapter(naming = GenerateTypeAdapter.Naming.LOWER_CASE_WITH_UNDERSCORES)
 public class PostsIdsResponse {
     @Nonnull
-    private final String title;
+    final String title;
 
     @Nonnull
-    private final List<PostId> posts;
+    final List<PostId> posts;
     @Nullable
-    private final String nextToken;
+    final String nextToken;
 
     public PostsIdsResponse(@Nonnull String title,
                             @Nonnull List<PostId> posts,
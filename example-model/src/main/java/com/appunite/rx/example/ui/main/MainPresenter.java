@@ -140,7 +140,13 @@ class MainPresenter {
                     .compose(MoreOperators.observableSwitch(new Func1<PostId, Observable<BaseAdapterItem>>() {
                         @Override
                         public Observable<BaseAdapterItem> call(final PostId postId) {
-                            return postsDao.postDao(postId.id()).postObservable()
+                            return postsDao.postDaoObservable(postId.id())
+                                    .flatMap(new Func1<PostsDao.PostDao, Observable<ResponseOrError<Post>>>() {
+                                        @Override
+                                        public Observable<ResponseOrError<Post>> call(PostsDao.PostDao postDao) {
+                                            return postDao.postObservable();
+                                        }
+                                    })
                                     .map(new Func1<ResponseOrError<Post>, BaseAdapterItem>() {
                                         @Override
                                         public BaseAdapterItem call(ResponseOrError<Post> postResponseOrError) {
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.example.dao.internal.helpers;
+
+import com.appunite.cache.disk.BinarySerializer;
+import com.appunite.rx.example.dao.posts.model.Post;
+import com.appunite.rx.example.dao.posts.model.PostsResponse;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class PostsResponseCodecTest {
+
+    private final GsonSerializer<PostsResponse> jsonSerializer = new GsonSerializer<>(new Gson(), PostsResponse.class);
+    private final BinarySerializer<PostsResponse> serializer = new BinarySerializer<>(
+            new PostsResponseCodec(), jsonSerializer);
+
+    @Test
+    public void testEncodedResponse_isDecoded() throws Exception {
+        final PostsResponse response = new PostsResponse("title",
+                ImmutableList.of(new Post("1", "krowa"), new Post("2", "pies")), "next");
+
+        final PostsResponse decoded = serializer.deserialize(serializer.serialize(response));
+
+        assert_().that(decoded.title()).isEqualTo("title");
+        assert_().that(decoded.nextToken()).isEqualTo("next");
+        assert_().that(decoded.items()).hasSize(2);
+        assert_().that(decoded.items().get(1).id()).isEqualTo("2");
+        assert_().that(decoded.items().get(1).name()).isEqualTo("pies");
+    }
+
+    @Test
+    public void testEncodedResponse_isSmallerThanJson() throws Exception {
+        final PostsResponse response = new PostsResponse("title",
+                ImmutableList.of(new Post("1", "krowa"), new Post("2", "krowa")), null);
+
+        assert_().that(serializer.serialize(response).length)
+                .isLessThan(jsonSerializer.serialize(response).length);
+    }
+
+    @Test
+    public void testJsonWrittenByPreviousVersion_isDecoded() throws Exception {
+        final byte[] json = "{\"title\":\"title\",\"posts\":[{\"name\":\"krowa\",\"id\":\"1\"}]}"
+                .getBytes(Charset.forName("UTF-8"));
+
+        final PostsResponse decoded = serializer.deserialize(json);
+
+        assert_().that(decoded.items().get(0).name()).isEqualTo("krowa");
+    }
+}
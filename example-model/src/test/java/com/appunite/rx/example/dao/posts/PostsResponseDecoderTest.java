@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.example.dao.posts;
+
+import com.appunite.rx.example.dao.posts.model.PostsResponse;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+import javax.annotation.Nonnull;
+
+import rx.functions.Func0;
+import rx.observers.TestSubscriber;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class PostsResponseDecoderTest {
+
+    private static final String JSON = "{\"title\":\"title\",\"posts\":["
+            + "{\"id\":\"1\",\"name\":\"krowa\"},"
+            + "{\"id\":\"2\",\"name\":\"pies\"}"
+            + "],\"next_token\":\"next\"}";
+
+    private final PostsResponseDecoder decoder = new PostsResponseDecoder(new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .create());
+
+    @Test
+    public void testDecode_emitPostsAndThenResponse() throws Exception {
+        final TestSubscriber<PostsResponseDecoder.Chunk> subscriber = new TestSubscriber<>();
+
+        decoder.decode(reader(JSON)).subscribe(subscriber);
+
+        subscriber.assertNoErrors();
+        subscriber.assertCompleted();
+        assert_().that(subscriber.getOnNextEvents()).hasSize(3);
+        assert_().that(subscriber.getOnNextEvents().get(0).post().name()).isEqualTo("krowa");
+        assert_().that(subscriber.getOnNextEvents().get(1).post().name()).isEqualTo("pies");
+        final PostsResponse response = subscriber.getOnNextEvents().get(2).response();
+        assert_().that(response.title()).isEqualTo("title");
+        assert_().that(response.nextToken()).isEqualTo("next");
+        assert_().that(response.items()).hasSize(2);
+    }
+
+    @Test
+    public void testWhenOnePostRequested_emitOnlyOnePost() throws Exception {
+        final TestSubscriber<PostsResponseDecoder.Chunk> subscriber = new TestSubscriber<>(1);
+
+        decoder.decode(reader(JSON)).subscribe(subscriber);
+
+        assert_().that(subscriber.getOnNextEvents()).hasSize(1);
+        assert_().that(subscriber.getOnNextEvents().get(0).post().id()).isEqualTo("1");
+        subscriber.assertNotCompleted();
+    }
+
+    @Test
+    public void testToResponses_returnPostsParsedSoFarAndThenWholeResponse() throws Exception {
+        final TestSubscriber<PostsResponse> subscriber = new TestSubscriber<>();
+
+        decoder.decode(reader(JSON)).compose(PostsResponseDecoder.toResponses()).subscribe(subscriber);
+
+        subscriber.assertNoErrors();
+        subscriber.assertCompleted();
+        subscriber.assertValueCount(3);
+        final PostsResponse first = subscriber.getOnNextEvents().get(0);
+        assert_().that(first.title()).isEqualTo("title");
+        assert_().that(first.items()).hasSize(1);
+        assert_().that(first.nextToken()).isNull();
+        assert_().that(subscriber.getOnNextEvents().get(1).items()).hasSize(2);
+        assert_().that(subscriber.getOnNextEvents().get(2).nextToken()).isEqualTo("next");
+    }
+
+    @Test
+    public void testWhenOneResponseRequested_firstPostIsReturnedBeforeResponseIsParsed() throws Exception {
+        final TestSubscriber<PostsResponse> subscriber = new TestSubscriber<>(1);
+
+        decoder.decode(reader(JSON)).compose(PostsResponseDecoder.toResponses()).subscribe(subscriber);
+
+        subscriber.assertValueCount(1);
+        assert_().that(subscriber.getOnNextEvents().get(0).items().get(0).id()).isEqualTo("1");
+        subscriber.assertNotCompleted();
+    }
+
+    @Test
+    public void testToResponse_returnWholeResponse() throws Exception {
+        final TestSubscriber<PostsResponse> subscriber = new TestSubscriber<>();
+
+        decoder.decode(reader(JSON)).compose(PostsResponseDecoder.toResponse()).subscribe(subscriber);
+
+        subscriber.assertValueCount(1);
+        assert_().that(subscriber.getOnNextEvents().get(0).items().get(1).id()).isEqualTo("2");
+    }
+
+    @Test
+    public void testWhenJsonIsMalformed_emitError() throws Exception {
+        final TestSubscriber<PostsResponseDecoder.Chunk> subscriber = new TestSubscriber<>();
+
+        decoder.decode(reader("{\"posts\":[{\"id\":\"1\",\"name\":\"krowa\"},")).subscribe(subscriber);
+
+        assert_().that(subscriber.getOnNextEvents()).hasSize(1);
+        assert_().that(subscriber.getOnErrorEvents()).hasSize(1);
+    }
+
+    @Nonnull
+    private static Func0<Reader> reader(@Nonnull final String json) {
+        return new Func0<Reader>() {
+            @Override
+            public Reader call() {
+                return new StringReader(json);
+            }
+        };
+    }
+}
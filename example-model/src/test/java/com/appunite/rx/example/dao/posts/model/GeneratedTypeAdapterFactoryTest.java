@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.example.dao.posts.model;
+
+import com.appunite.gson.AndroidUnderscoreNamingStrategy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class GeneratedTypeAdapterFactoryTest {
+
+    private final Gson reflective = new GsonBuilder()
+            .setFieldNamingStrategy(new AndroidUnderscoreNamingStrategy())
+            .create();
+    private final Gson generated = new GsonBuilder()
+            .registerTypeAdapterFactory(new GeneratedTypeAdapterFactory())
+            .setFieldNamingStrategy(new AndroidUnderscoreNamingStrategy())
+            .create();
+
+    @Test
+    public void testModelClasses_useGeneratedAdapters() throws Exception {
+        final TypeAdapter<PostsResponse> adapter = generated.getAdapter(PostsResponse.class);
+
+        assert_().that(adapter).isInstanceOf(PostsResponse_TypeAdapter.class);
+    }
+
+    @Test
+    public void testPostsResponse_isWrittenLikeReflectiveAdapter() throws Exception {
+        final PostsResponse response = new PostsResponse("title",
+                Arrays.asList(new Post("1", "first"), new Post("2", "second")), "token");
+
+        assert_().that(generated.toJson(response)).isEqualTo(reflective.toJson(response));
+    }
+
+    @Test
+    public void testPostsIdsResponse_isWrittenLikeReflectiveAdapter() throws Exception {
+        final PostsIdsResponse response = new PostsIdsResponse("title",
+                Collections.singletonList(new PostId("1")), null);
+
+        assert_().that(generated.toJson(response)).isEqualTo(reflective.toJson(response));
+    }
+
+    @Test
+    public void testPostWithBody_isReadLikeReflectiveAdapter() throws Exception {
+        final String json = "{\"id\":\"1\",\"name\":\"name\",\"body\":\"body\",\"unknown\":[1,2]}";
+
+        final PostWithBody post = generated.fromJson(json, PostWithBody.class);
+
+        assert_().that(generated.toJson(post))
+                .isEqualTo(reflective.toJson(reflective.fromJson(json, PostWithBody.class)));
+    }
+
+    @Test
+    public void testAddPost_roundTrip() throws Exception {
+        final AddPost addPost = new AddPost("name", "body");
+
+        assert_().that(generated.fromJson(generated.toJson(addPost), AddPost.class)).isEqualTo(addPost);
+    }
+}
@@ -25,6 +25,8 @@ import com.appunite.rx.example.dao.internal.helpers.CacheProviderImpl;
 import com.appunite.rx.example.dao.posts.PostsService;
 import com.appunite.rx.example.dao.auth.MyCurrentLoggedInUserDao;
 import com.appunite.rx.example.dao.posts.PostsDao;
+import com.appunite.rx.example.dao.posts.PostsResponseDecoder;
+import com.appunite.rx.example.dao.posts.model.GeneratedTypeAdapterFactory;
 import com.appunite.rx.example.dao.internal.helpers.CacheProvider;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -38,6 +40,7 @@ import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
 import retrofit2.converter.gson.GsonConverterFactory;
+import rx.schedulers.Schedulers;
 
 /**
  * Normally we rather use dagger instead of static, but for testing purposes is ok
@@ -70,7 +73,8 @@ public class FakeDagger {
             final Retrofit restAdapter = getRestAdapter(gson, client);
             final PostsService postsService = restAdapter.create(PostsService.class);
             final CacheProvider cacheProvider = getCacheProvider(context, gson);
-            postsDao = new PostsDao(MyAndroidNetworkSchedulers.networkScheduler(), postsService, cacheProvider, getCurrentLoggedInUserDaoInstance());
+            postsDao = new PostsDao(MyAndroidNetworkSchedulers.networkScheduler(), postsService, cacheProvider,
+                    getCurrentLoggedInUserDaoInstance(), new PostsResponseDecoder(gson));
             return postsDao;
         }
     }
@@ -95,12 +99,13 @@ public class FakeDagger {
 
     @Nonnull
     private static CacheProvider getCacheProvider(@Nonnull final Context context,  @Nonnull final Gson gson) {
-        return new CacheProviderImpl(gson, context.getCacheDir());
+        return new CacheProviderImpl(gson, context.getCacheDir(), Schedulers.io());
     }
 
     @Nonnull
     private static Gson getGson() {
         return new GsonBuilder()
+                .registerTypeAdapterFactory(new GeneratedTypeAdapterFactory())
                 .setFieldNamingStrategy(new AndroidUnderscoreNamingStrategy())
                 .create();
     }
@@ -16,28 +16,72 @@
 
 package com.appunite.rx.example.dao.internal.helpers;
 
+import com.appunite.cache.disk.CacheDirectory;
+import com.appunite.cache.disk.FsyncPolicy;
+import com.appunite.cache.disk.JournalStore;
+import com.appunite.cache.disk.PagedCacheCreator;
+import com.appunite.cache.disk.Serializer;
+import com.appunite.rx.example.dao.posts.model.PostsResponse;
 import com.appunite.rx.subjects.CacheSubject;
+import com.appunite.rx.subjects.TieredCache;
 import com.google.gson.Gson;
 
 import java.io.File;
 import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 
+import rx.Scheduler;
+
 public class CacheProviderImpl implements CacheProvider {
+    private static final int MEMORY_ENTRIES = 20;
+    private static final long JOURNAL_MAX_SIZE = 10 * 1024 * 1024;
+    private static final long DIRECTORY_MAX_SIZE = 10 * 1024 * 1024;
+
     @Nonnull
     private final Gson gson;
     @Nonnull
     private final File cacheDir;
+    @Nonnull
+    private final CacheDirectory cacheDirectory;
+    @Nonnull
+    private final JournalStore journalStore;
+    @Nonnull
+    private final TieredCache tieredCache;
 
-    public CacheProviderImpl(@Nonnull Gson gson, @Nonnull File cacheDir) {
+    public CacheProviderImpl(@Nonnull Gson gson, @Nonnull File cacheDir, @Nonnull Scheduler ioScheduler) {
         this.gson = gson;
         this.cacheDir = cacheDir;
+        this.cacheDirectory = new CacheDirectory(new File(cacheDir, "entries"), DIRECTORY_MAX_SIZE,
+                FsyncPolicy.periodic(5, TimeUnit.SECONDS), ioScheduler);
+        this.journalStore = new JournalStore(new File(cacheDir, "cache.journal"), JOURNAL_MAX_SIZE,
+                FsyncPolicy.periodic(5, TimeUnit.SECONDS), ioScheduler);
+        // persistent stores are bounded by their own size in bytes
+        this.tieredCache = new TieredCache(MEMORY_ENTRIES, Long.MAX_VALUE, ioScheduler);
     }
 
     @Nonnull
     @Override
     public <T> CacheSubject.CacheCreator<T> getCacheCreatorForKey(@Nonnull String key, @Nonnull Type type) {
-        return new DiskCacheCreator<>(gson, type,  new File(cacheDir, key + ".txt"));
+        final Serializer<T> jsonSerializer = new GsonSerializer<>(gson, type);
+        // values written by previous versions as JSON file directly to cacheDir are moved to
+        // the only persistent store of this key
+        final CacheSubject.CacheCreator<T> persistent = new MigratingCacheCreator<>(
+                this.<T>persistent(key, type, jsonSerializer),
+                new DiskCacheCreator<>(jsonSerializer, new File(cacheDir, key + ".txt"), FsyncPolicy.never()));
+        return tieredCache.cacheCreator(key, persistent);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    private <T> CacheSubject.CacheCreator<T> persistent(@Nonnull String key,
+                                                        @Nonnull Type type,
+                                                        @Nonnull Serializer<T> jsonSerializer) {
+        if (type == PostsResponse.class) {
+            // next pages are appended to journal instead of writing whole list again
+            return (CacheSubject.CacheCreator<T>) new PagedCacheCreator<>(journalStore, key, new PostsResponseCodec());
+        }
+        return cacheDirectory.cacheCreator(key, jsonSerializer);
     }
 }
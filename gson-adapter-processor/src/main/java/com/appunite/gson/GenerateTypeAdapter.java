@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.gson;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generate Gson TypeAdapter for annotated class, so Gson does not need reflection to read or
+ * write it.
+ *
+ * <p>For every annotated class {@code Name} package-private {@code Name_TypeAdapter} is
+ * generated, and every package with annotated classes gets public
+ * {@code GeneratedTypeAdapterFactory} that should be registered in
+ * {@code GsonBuilder#registerTypeAdapterFactory}.</p>
+ *
+ * <p>Annotated class has to:</p>
+ * <ul>
+ *     <li>have non-private fields (including fields of superclasses), static and transient
+ *     fields are ignored</li>
+ *     <li>have non-private constructor with parameters named the same as fields</li>
+ *     <li>not be generic</li>
+ * </ul>
+ *
+ * <p>Field can be annotated with {@code @SerializedName} to change its JSON name.</p>
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateTypeAdapter {
+
+    /**
+     * @return how field names are translated to JSON names
+     */
+    Naming naming() default Naming.IDENTITY;
+
+    enum Naming {
+        /**
+         * JSON name is the same as field name
+         */
+        IDENTITY,
+        /**
+         * {@code nextToken} and {@code mNextToken} are translated to {@code next_token}
+         */
+        LOWER_CASE_WITH_UNDERSCORES
+    }
+}
@@ -0,0 +1,581 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.gson.processor;
+
+import com.appunite.gson.GenerateTypeAdapter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates streaming Gson TypeAdapters for classes annotated with {@link GenerateTypeAdapter}.
+ *
+ * <p>Generated code depends only on Gson, so processor can be added to compile only
+ * classpath.</p>
+ */
+public class TypeAdapterProcessor extends AbstractProcessor {
+
+    static final String FACTORY_NAME = "GeneratedTypeAdapterFactory";
+    static final String ADAPTER_SUFFIX = "_TypeAdapter";
+    private static final String SERIALIZED_NAME = "com.google.gson.annotations.SerializedName";
+
+    private final Set<String> generatedFactories = new HashSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(GenerateTypeAdapter.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        final Map<String, List<Model>> packages = new LinkedHashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateTypeAdapter.class)) {
+            try {
+                final Model model = parse(element);
+                writeSource(model.packageName, model.adapterName, adapterSource(model), element);
+                List<Model> models = packages.get(model.packageName);
+                if (models == null) {
+                    models = new ArrayList<>();
+                    packages.put(model.packageName, models);
+                }
+                models.add(model);
+            } catch (ProcessingException e) {
+                error(e.getMessage(), e.element);
+            }
+        }
+        for (Map.Entry<String, List<Model>> entry : packages.entrySet()) {
+            final String packageName = entry.getKey();
+            final Element element = entry.getValue().get(0).element;
+            if (!generatedFactories.add(packageName)) {
+                error("All classes in package " + packageName
+                        + " annotated with @GenerateTypeAdapter have to be compiled in the same round",
+                        element);
+                continue;
+            }
+            try {
+                writeSource(packageName, FACTORY_NAME, factorySource(packageName, entry.getValue()), element);
+            } catch (ProcessingException e) {
+                error(e.getMessage(), e.element);
+            }
+        }
+        return true;
+    }
+
+    private Model parse(Element element) throws ProcessingException {
+        if (element.getKind() != ElementKind.CLASS) {
+            throw new ProcessingException(element, "@GenerateTypeAdapter can only be applied to class");
+        }
+        final TypeElement type = (TypeElement) element;
+        final Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.ABSTRACT)) {
+            throw new ProcessingException(element, "Class annotated with @GenerateTypeAdapter can not be private or abstract");
+        }
+        if (type.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)) {
+            throw new ProcessingException(element, "Nested class annotated with @GenerateTypeAdapter has to be static");
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            throw new ProcessingException(element, "Generic classes are not supported by @GenerateTypeAdapter");
+        }
+
+        final GenerateTypeAdapter.Naming naming = type.getAnnotation(GenerateTypeAdapter.class).naming();
+        final List<Property> properties = new ArrayList<>();
+        final Set<String> jsonNames = new HashSet<>();
+        // class fields before superclass fields, in the same order as reflective Gson adapter
+        for (TypeElement current = type; current != null; current = superclass(current)) {
+            for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+                final Set<Modifier> fieldModifiers = field.getModifiers();
+                if (fieldModifiers.contains(Modifier.STATIC) || fieldModifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                if (fieldModifiers.contains(Modifier.PRIVATE)) {
+                    throw new ProcessingException(field, "Field " + field.getSimpleName()
+                            + " can not be private to generate type adapter for " + type.getQualifiedName());
+                }
+                if (field.asType().getKind() == TypeKind.TYPEVAR) {
+                    throw new ProcessingException(field, "Generic fields are not supported by @GenerateTypeAdapter");
+                }
+                final Property property = new Property(field.getSimpleName().toString(),
+                        jsonName(field, naming), field.asType());
+                if (!jsonNames.add(property.jsonName)) {
+                    throw new ProcessingException(field, "Duplicated JSON name " + property.jsonName);
+                }
+                properties.add(property);
+            }
+        }
+
+        final List<Property> constructorProperties = constructorProperties(type, properties);
+        final PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        final String packageName = packageElement.isUnnamed()
+                ? "" : packageElement.getQualifiedName().toString();
+        final String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        final String flatName = packageName.isEmpty()
+                ? binaryName : binaryName.substring(packageName.length() + 1);
+        return new Model(type, packageName, type.getQualifiedName().toString(),
+                flatName.replace('$', '_') + ADAPTER_SUFFIX, properties, constructorProperties);
+    }
+
+    private static TypeElement superclass(TypeElement type) {
+        final TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        final TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        if (element.getQualifiedName().contentEquals("java.lang.Object")) {
+            return null;
+        }
+        return element;
+    }
+
+    private static List<Property> constructorProperties(TypeElement type, List<Property> properties)
+            throws ProcessingException {
+        final Map<String, Property> byName = new LinkedHashMap<>();
+        for (Property property : properties) {
+            byName.put(property.fieldName, property);
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE)
+                    || constructor.getParameters().size() != properties.size()) {
+                continue;
+            }
+            final List<Property> matched = new ArrayList<>();
+            for (VariableElement parameter : constructor.getParameters()) {
+                final Property property = byName.get(parameter.getSimpleName().toString());
+                if (property == null || !sameType(parameter.asType(), property.type)) {
+                    break;
+                }
+                matched.add(property);
+            }
+            if (matched.size() == properties.size()) {
+                return matched;
+            }
+        }
+        throw new ProcessingException(type, "Class " + type.getQualifiedName()
+                + " needs non-private constructor with parameters named like its fields");
+    }
+
+    private static boolean sameType(TypeMirror first, TypeMirror second) {
+        return first.toString().equals(second.toString());
+    }
+
+    private static String jsonName(VariableElement field, GenerateTypeAdapter.Naming naming) {
+        for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+            final TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (!annotationType.getQualifiedName().contentEquals(SERIALIZED_NAME)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : annotation.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("value")) {
+                    return (String) entry.getValue().getValue();
+                }
+            }
+        }
+        final String name = field.getSimpleName().toString();
+        switch (naming) {
+            case LOWER_CASE_WITH_UNDERSCORES:
+                return lowerCaseWithUnderscores(name);
+            default:
+                return name;
+        }
+    }
+
+    static String lowerCaseWithUnderscores(String name) {
+        final String stripped = name.length() > 1 && name.charAt(0) == 'm'
+                && Character.isUpperCase(name.charAt(1)) ? name.substring(1) : name;
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < stripped.length(); i++) {
+            final char c = stripped.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0) {
+                    builder.append('_');
+                }
+                builder.append(Character.toLowerCase(c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private String adapterSource(Model model) {
+        final SourceBuilder s = new SourceBuilder();
+        s.packageDeclaration(model.packageName);
+        s.line("import com.google.gson.Gson;");
+        s.line("import com.google.gson.TypeAdapter;");
+        s.line("import com.google.gson.reflect.TypeToken;");
+        s.line("import com.google.gson.stream.JsonReader;");
+        s.line("import com.google.gson.stream.JsonToken;");
+        s.line("import com.google.gson.stream.JsonWriter;");
+        s.line("import java.io.IOException;");
+        s.line("");
+        s.line("/**");
+        s.line(" * Generated by " + TypeAdapterProcessor.class.getName() + ", do not modify");
+        s.line(" */");
+        s.open("final class " + model.adapterName + " extends TypeAdapter<" + model.className + ">");
+
+        for (Property property : model.properties) {
+            if (property.needsAdapter()) {
+                s.line("private final TypeAdapter<" + property.adapterType(processingEnv) + "> "
+                        + property.adapterField() + ";");
+            }
+        }
+        s.line("");
+        s.open(model.adapterName + "(Gson gson)");
+        for (Property property : model.properties) {
+            if (property.needsAdapter()) {
+                s.line(property.adapterField() + " = gson.getAdapter(new TypeToken<"
+                        + property.adapterType(processingEnv) + ">() {});");
+            }
+        }
+        s.close();
+        s.line("");
+
+        s.line("@Override");
+        s.open("public void write(JsonWriter out, " + model.className + " value) throws IOException");
+        s.open("if (value == null)");
+        s.line("out.nullValue();");
+        s.line("return;");
+        s.close();
+        s.line("out.beginObject();");
+        for (Property property : model.properties) {
+            final String access = "value." + property.fieldName;
+            // null values are written with nullValue() so JsonWriter can honor serializeNulls
+            s.line("out.name(" + literal(property.jsonName) + ");");
+            if (property.needsAdapter()) {
+                s.line(property.adapterField() + ".write(out, " + access + ");");
+            } else {
+                s.line("out.value(" + access + ");");
+            }
+        }
+        s.line("out.endObject();");
+        s.close();
+        s.line("");
+
+        s.line("@Override");
+        s.open("public " + model.className + " read(JsonReader in) throws IOException");
+        s.open("if (in.peek() == JsonToken.NULL)");
+        s.line("in.nextNull();");
+        s.line("return null;");
+        s.close();
+        for (Property property : model.properties) {
+            s.line(property.type + " " + property.local() + " = " + property.defaultValue() + ";");
+        }
+        s.line("in.beginObject();");
+        s.open("while (in.hasNext())");
+        s.open("switch (in.nextName())");
+        for (Property property : model.properties) {
+            s.line("case " + literal(property.jsonName) + ":");
+            s.indent();
+            property.read(s, processingEnv);
+            s.line("break;");
+            s.unindent();
+        }
+        s.line("default:");
+        s.indent();
+        s.line("in.skipValue();");
+        s.unindent();
+        s.close();
+        s.close();
+        s.line("in.endObject();");
+        final StringBuilder arguments = new StringBuilder();
+        for (Property property : model.constructorProperties) {
+            if (arguments.length() > 0) {
+                arguments.append(", ");
+            }
+            arguments.append(property.local());
+        }
+        s.line("return new " + model.className + "(" + arguments + ");");
+        s.close();
+        s.close();
+        return s.toString();
+    }
+
+    private static String factorySource(String packageName, List<Model> models) {
+        final SourceBuilder s = new SourceBuilder();
+        s.packageDeclaration(packageName);
+        s.line("import com.google.gson.Gson;");
+        s.line("import com.google.gson.TypeAdapter;");
+        s.line("import com.google.gson.TypeAdapterFactory;");
+        s.line("import com.google.gson.reflect.TypeToken;");
+        s.line("");
+        s.line("/**");
+        s.line(" * Generated by " + TypeAdapterProcessor.class.getName() + ", do not modify");
+        s.line(" */");
+        s.open("public final class " + FACTORY_NAME + " implements TypeAdapterFactory");
+        s.line("@Override");
+        s.line("@SuppressWarnings(\"unchecked\")");
+        s.open("public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)");
+        s.line("final Class<? super T> rawType = type.getRawType();");
+        for (Model model : models) {
+            s.open("if (rawType == " + model.className + ".class)");
+            s.line("return (TypeAdapter<T>) new " + model.adapterName + "(gson);");
+            s.close();
+        }
+        s.line("return null;");
+        s.close();
+        s.close();
+        return s.toString();
+    }
+
+    private void writeSource(String packageName, String simpleName, String source, Element origin)
+            throws ProcessingException {
+        final String name = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try {
+            final JavaFileObject file = processingEnv.getFiler().createSourceFile(name, origin);
+            final Writer writer = file.openWriter();
+            try {
+                writer.write(source);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new ProcessingException(origin, "Could not write " + name + ": " + e.getMessage());
+        }
+    }
+
+    private void error(String message, Element element) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    static String literal(String value) {
+        final StringBuilder builder = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static class Model {
+        final TypeElement element;
+        final String packageName;
+        final String className;
+        final String adapterName;
+        final List<Property> properties;
+        final List<Property> constructorProperties;
+
+        Model(TypeElement element, String packageName, String className, String adapterName,
+              List<Property> properties, List<Property> constructorProperties) {
+            this.element = element;
+            this.packageName = packageName;
+            this.className = className;
+            this.adapterName = adapterName;
+            this.properties = properties;
+            this.constructorProperties = constructorProperties;
+        }
+    }
+
+    private static class Property {
+        final String fieldName;
+        final String jsonName;
+        final TypeMirror type;
+
+        Property(String fieldName, String jsonName, TypeMirror type) {
+            this.fieldName = fieldName;
+            this.jsonName = jsonName;
+            this.type = type;
+        }
+
+        /**
+         * String, boolean, int, long and double are read and written directly on the stream
+         */
+        boolean needsAdapter() {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                case INT:
+                case LONG:
+                case DOUBLE:
+                    return false;
+                case DECLARED:
+                    return !type.toString().equals("java.lang.String");
+                default:
+                    return true;
+            }
+        }
+
+        String adapterType(ProcessingEnvironment env) {
+            if (type.getKind().isPrimitive()) {
+                return env.getTypeUtils().boxedClass(env.getTypeUtils().getPrimitiveType(type.getKind()))
+                        .getQualifiedName().toString();
+            }
+            return type.toString();
+        }
+
+        String adapterField() {
+            return fieldName + "Adapter";
+        }
+
+        String local() {
+            return "_" + fieldName;
+        }
+
+        String defaultValue() {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                    return "false";
+                case CHAR:
+                    return "'\\0'";
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                case FLOAT:
+                case DOUBLE:
+                    return "0";
+                default:
+                    return "null";
+            }
+        }
+
+        void read(SourceBuilder s, ProcessingEnvironment env) {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                    s.line(local() + " = in.nextBoolean();");
+                    return;
+                case INT:
+                    s.line(local() + " = in.nextInt();");
+                    return;
+                case LONG:
+                    s.line(local() + " = in.nextLong();");
+                    return;
+                case DOUBLE:
+                    s.line(local() + " = in.nextDouble();");
+                    return;
+                default:
+                    break;
+            }
+            if (type.getKind().isPrimitive()) {
+                // other primitives go through boxed adapter, null keeps default value
+                s.line("final " + adapterType(env) + " " + local() + "Boxed = "
+                        + adapterField() + ".read(in);");
+                s.open("if (" + local() + "Boxed != null)");
+                s.line(local() + " = " + local() + "Boxed;");
+                s.close();
+            } else if (!needsAdapter()) {
+                s.open("if (in.peek() == JsonToken.NULL)");
+                s.line("in.nextNull();");
+                s.line(local() + " = null;");
+                s.unindent();
+                s.line("} else if (in.peek() == JsonToken.BOOLEAN) {");
+                s.indent();
+                s.line(local() + " = Boolean.toString(in.nextBoolean());");
+                s.unindent();
+                s.line("} else {");
+                s.indent();
+                s.line(local() + " = in.nextString();");
+                s.close();
+            } else {
+                s.line(local() + " = " + adapterField() + ".read(in);");
+            }
+        }
+    }
+
+    private static class SourceBuilder {
+        private final StringBuilder builder = new StringBuilder();
+        private int indent;
+
+        void packageDeclaration(String packageName) {
+            if (!packageName.isEmpty()) {
+                line("package " + packageName + ";");
+                line("");
+            }
+        }
+
+        void line(String line) {
+            if (!line.isEmpty()) {
+                for (int i = 0; i < indent; i++) {
+                    builder.append("    ");
+                }
+            }
+            builder.append(line).append('\n');
+        }
+
+        void open(String statement) {
+            line(statement + " {");
+            indent();
+        }
+
+        void close() {
+            unindent();
+            line("}");
+        }
+
+        void indent() {
+            indent += 1;
+        }
+
+        void unindent() {
+            indent -= 1;
+        }
+
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+    }
+
+    private static class ProcessingException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        // exception never leaves the processor, element is not serializable
+        final transient Element element;
+
+        ProcessingException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.gson.processor;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapterFactory;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class TypeAdapterProcessorTest {
+
+    private static final String BASE = "" +
+            "package sample;\n" +
+            "public class Base {\n" +
+            "    final String id;\n" +
+            "    public Base(String id) { this.id = id; }\n" +
+            "}\n";
+
+    private static final String ITEM = "" +
+            "package sample;\n" +
+            "import com.appunite.gson.GenerateTypeAdapter;\n" +
+            "@GenerateTypeAdapter\n" +
+            "public class Item extends Base {\n" +
+            "    final String name;\n" +
+            "    public Item(String id, String name) { super(id); this.name = name; }\n" +
+            "}\n";
+
+    private static final String RESPONSE = "" +
+            "package sample;\n" +
+            "import com.appunite.gson.GenerateTypeAdapter;\n" +
+            "import com.google.gson.annotations.SerializedName;\n" +
+            "import java.util.List;\n" +
+            "@GenerateTypeAdapter(naming = GenerateTypeAdapter.Naming.LOWER_CASE_WITH_UNDERSCORES)\n" +
+            "public class Response {\n" +
+            "    static final String IGNORED = \"ignored\";\n" +
+            "    final List<Item> items;\n" +
+            "    final String nextToken;\n" +
+            "    final int mCount;\n" +
+            "    final boolean hasMore;\n" +
+            "    final float score;\n" +
+            "    @SerializedName(\"custom\") final long customName;\n" +
+            "    transient String cached;\n" +
+            "    public Response(String nextToken, List<Item> items, int mCount, boolean hasMore,\n" +
+            "                    float score, long customName) {\n" +
+            "        this.items = items; this.nextToken = nextToken; this.mCount = mCount;\n" +
+            "        this.hasMore = hasMore; this.score = score; this.customName = customName;\n" +
+            "    }\n" +
+            "}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File sources;
+    private File classes;
+    private ClassLoader classLoader;
+
+    @Before
+    public void setUp() throws Exception {
+        sources = folder.newFolder("sources");
+        classes = folder.newFolder("classes");
+    }
+
+    @Test
+    public void testAnnotatedClass_adapterAndFactoryAreGenerated() throws Exception {
+        final List<Diagnostic<? extends JavaFileObject>> errors = compile(BASE, ITEM, RESPONSE);
+
+        assert_().that(errors).isEmpty();
+        assert_().that(new File(classes, "sample/Item_TypeAdapter.class").exists()).isTrue();
+        assert_().that(new File(classes, "sample/Response_TypeAdapter.class").exists()).isTrue();
+        assert_().that(new File(classes, "sample/GeneratedTypeAdapterFactory.class").exists()).isTrue();
+    }
+
+    @Test
+    public void testRead_fieldsAreSetThroughConstructor() throws Exception {
+        compile(BASE, ITEM, RESPONSE);
+        final Gson gson = gson();
+        final Class<?> responseClass = load("sample.Response");
+
+        final Object response = gson.fromJson("{\"next_token\":\"abc\",\"count\":2,\"has_more\":true," +
+                "\"score\":1.5,\"custom\":5,\"unknown\":{\"a\":[1]}," +
+                "\"items\":[{\"id\":\"1\",\"name\":\"first\"}]}", responseClass);
+
+        assert_().that(gson.toJson(response)).isEqualTo("{\"items\":[{\"name\":\"first\",\"id\":\"1\"}]," +
+                "\"next_token\":\"abc\",\"count\":2,\"has_more\":true,\"score\":1.5,\"custom\":5}");
+    }
+
+    @Test
+    public void testNullValues_areSkippedByDefault() throws Exception {
+        compile(BASE, ITEM, RESPONSE);
+        final Gson gson = gson();
+
+        final Object item = gson.fromJson("{\"id\":null}", load("sample.Item"));
+
+        assert_().that(gson.toJson(item)).isEqualTo("{}");
+    }
+
+    @Test
+    public void testNullValues_areWrittenWhenSerializeNulls() throws Exception {
+        compile(BASE, ITEM, RESPONSE);
+        final Gson gson = new GsonBuilder()
+                .registerTypeAdapterFactory(factory())
+                .serializeNulls()
+                .create();
+
+        final Object item = gson.fromJson("{\"id\":\"1\"}", load("sample.Item"));
+
+        assert_().that(gson.toJson(item)).isEqualTo("{\"name\":null,\"id\":\"1\"}");
+    }
+
+    @Test
+    public void testPrivateField_reportsError() throws Exception {
+        final List<Diagnostic<? extends JavaFileObject>> errors = compile("" +
+                "package sample;\n" +
+                "@com.appunite.gson.GenerateTypeAdapter\n" +
+                "public class Broken {\n" +
+                "    private final String name;\n" +
+                "    public Broken(String name) { this.name = name; }\n" +
+                "}\n");
+
+        assert_().that(errors).hasSize(1);
+        assert_().that(errors.get(0).getMessage(null)).contains("can not be private");
+    }
+
+    @Test
+    public void testMissingConstructor_reportsError() throws Exception {
+        final List<Diagnostic<? extends JavaFileObject>> errors = compile("" +
+                "package sample;\n" +
+                "@com.appunite.gson.GenerateTypeAdapter\n" +
+                "public class Broken {\n" +
+                "    final String name;\n" +
+                "    public Broken(String other) { this.name = other; }\n" +
+                "}\n");
+
+        assert_().that(errors).hasSize(1);
+        assert_().that(errors.get(0).getMessage(null)).contains("constructor");
+    }
+
+    @Test
+    public void testLowerCaseWithUnderscores_stripsMemberPrefix() throws Exception {
+        assert_().that(TypeAdapterProcessor.lowerCaseWithUnderscores("mNextToken")).isEqualTo("next_token");
+        assert_().that(TypeAdapterProcessor.lowerCaseWithUnderscores("nextToken")).isEqualTo("next_token");
+        assert_().that(TypeAdapterProcessor.lowerCaseWithUnderscores("message")).isEqualTo("message");
+    }
+
+    private Gson gson() throws Exception {
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(factory())
+                .create();
+    }
+
+    private TypeAdapterFactory factory() throws Exception {
+        return (TypeAdapterFactory) load("sample.GeneratedTypeAdapterFactory").newInstance();
+    }
+
+    private Class<?> load(String name) throws Exception {
+        if (classLoader == null) {
+            classLoader = new URLClassLoader(new URL[]{classes.toURI().toURL()}, getClass().getClassLoader());
+        }
+        return Class.forName(name, true, classLoader);
+    }
+
+    private List<Diagnostic<? extends JavaFileObject>> compile(String... sourceCodes) throws IOException {
+        final List<File> files = new ArrayList<>();
+        for (String sourceCode : sourceCodes) {
+            final String name = sourceCode.substring(sourceCode.indexOf("class ") + 6).split("[ {]")[0];
+            final File file = new File(sources, name + ".java");
+            final Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+            try {
+                writer.write(sourceCode);
+            } finally {
+                writer.close();
+            }
+            files.add(file);
+        }
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        try {
+            final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                            "-d", classes.getPath(), "-s", sources.getPath(), "-nowarn"),
+                    null, fileManager.getJavaFileObjectsFromFiles(files));
+            task.setProcessors(Arrays.asList(new TypeAdapterProcessor()));
+            task.call();
+        } finally {
+            fileManager.close();
+        }
+
+        final List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic);
+            }
+        }
+        return errors;
+    }
+}
@@ -21,7 +21,8 @@ import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
 import com.appunite.detector.ChangesDetector;
-import com.appunite.detector.SimpleDetector;
+import com.appunite.detector.DiffChangesDetector;
+import com.appunite.detector.DiffedList;
 
 import java.util.Collections;
 import java.util.List;
@@ -38,8 +39,8 @@ import rx.functions.Action1;
 public class UniversalAdapter extends RecyclerView.Adapter<ViewHolderManager.BaseViewHolder>
         implements Action1<List<BaseAdapterItem>>, ChangesDetector.ChangesAdapter {
     @Nonnull
-    private final ChangesDetector<BaseAdapterItem, BaseAdapterItem> changesDetector =
-            new ChangesDetector<>(new SimpleDetector<BaseAdapterItem>());
+    private final DiffChangesDetector<BaseAdapterItem, BaseAdapterItem> changesDetector =
+            new DiffChangesDetector<>(new BaseAdapterItemDetector());
     @Nonnull
     private final List<ViewHolderManager> managers;
     @Nonnull
@@ -140,12 +141,51 @@ public class UniversalAdapter extends RecyclerView.Adapter<ViewHolderManager.Bas
         this.managers = managers;
     }
 
+    /**
+     * Set new items and compute changes on calling thread
+     *
+     * <p>Old items are found by {@link BaseAdapterItem#adapterId()} and confirmed by
+     * {@link BaseAdapterItem#matches(BaseAdapterItem)}, so items that match need to have
+     * the same adapter id. Items with {@link BaseAdapterItem#NO_ID} are compared with each
+     * other one by one. For long lists use {@link #diffedListAction()} to compute changes
+     * in background.</p>
+     *
+     * @param baseAdapterItems new items
+     */
     @Override
     public void call(@Nonnull List<BaseAdapterItem> baseAdapterItems) {
         items = baseAdapterItems;
         changesDetector.newData(this, items, false);
     }
 
+    /**
+     * Action that sets lists with changes computed by
+     * {@link com.appunite.detector.ListDiffer#transformer(rx.Scheduler)}, so on UI thread
+     * recorded changes are only dispatched to adapter.
+     *
+     * <pre>{@code
+     *   itemsObservable
+     *     .compose(new ListDiffer<>(new BaseAdapterItemDetector()).transformer(Schedulers.computation()))
+     *     .observeOn(AndroidSchedulers.mainThread())
+     *     .subscribe(adapter.diffedListAction());
+     * }</pre>
+     *
+     * <p>Do not mix it with {@link #call(List)} on the same adapter, because changes are
+     * computed from previously emitted list.</p>
+     *
+     * @return action that need to be called on UI thread
+     */
+    @Nonnull
+    public Action1<DiffedList<BaseAdapterItem>> diffedListAction() {
+        return new Action1<DiffedList<BaseAdapterItem>>() {
+            @Override
+            public void call(DiffedList<BaseAdapterItem> diffedList) {
+                items = diffedList.items();
+                diffedList.diffResult().dispatchTo(UniversalAdapter.this);
+            }
+        };
+    }
+
     @Override
     public ViewHolderManager.BaseViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         final ViewHolderManager manager = managers.get(viewType);
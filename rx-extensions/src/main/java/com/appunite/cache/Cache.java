@@ -16,13 +16,69 @@
 
 package com.appunite.cache;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.internal.producers.SingleDelayedProducer;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+import static com.appunite.rx.internal.Preconditions.checkArgument;
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+import static com.appunite.rx.internal.Preconditions.checkState;
 
 /**
- * In memory cache that stores values by key using provider - it never free memory
+ * In memory cache that stores values by key using provider
+ *
+ * <p>Cache created by {@link #Cache(CacheProvider)} never free memory. If you need to limit
+ * memory use {@link #builder(CacheProvider)} with {@link Builder#maximumSize(long)} or
+ * {@link Builder#maximumWeight(long, Weigher)}.</p>
+ *
+ * <p>Cache is thread safe. Reading of already loaded value do not take any lock. If many
+ * threads ask for the same missing key only one of them calls {@link CacheProvider#load(Object)}
+ * and the others wait for its result. Missing values for different keys are loaded in
+ * parallel.</p>
+ *
+ * <p>If you don't want to call {@link CacheProvider#load(Object)} on your thread (i.e. UI
+ * thread) use {@link #getAsync(Object, Scheduler)}.</p>
+ *
+ * <p>Values can be held by weak or soft references ({@link Builder#weakValues()},
+ * {@link Builder#softValues()}). Then value that is not referenced outside of the cache can
+ * be garbage collected, but as long as someone uses it {@link #get(Object)} returns the same
+ * instance.</p>
+ *
+ * <p>Values can expire after some time since they were loaded
+ * ({@link Builder#expireAfterWrite(long, TimeUnit)}) or last read
+ * ({@link Builder#expireAfterAccess(long, TimeUnit)}). With
+ * {@link Builder#refreshAfterWrite(long, TimeUnit)} old value is reloaded in background and
+ * callers get old value until new one is loaded. Expired values are removed when they are
+ * read or when new values are loaded, you can also call {@link #cleanUp()}.</p>
+ *
+ * <p>If cache was created with {@link Builder#recordStats()} {@link #stats()} returns number
+ * of hits, misses, loads and evictions.</p>
+ *
  * @param <K> key of cache
  * @param <V> value of cache
  */
@@ -30,7 +86,45 @@ public class Cache<K, V> {
     @Nonnull
     private final CacheProvider<K, V> provider;
     @Nonnull
-    private final Map<K, V> cached = new HashMap<>();
+    private final ConcurrentHashMap<K, Entry<V>> cached = new ConcurrentHashMap<>();
+    @Nullable
+    private final Weigher<? super K, ? super V> weigher;
+    /**
+     * Guarded by {@link #policyLock}
+     */
+    @Nullable
+    private final SegmentedLruPolicy<K> policy;
+    /**
+     * Reads that are not yet passed to {@link #policy}, so reads do not take
+     * {@link #policyLock}
+     */
+    @Nullable
+    private final ReadBuffer<K> readBuffer;
+    /**
+     * Entries that are counted by {@link #policy}, so only them are evicted,
+     * guarded by {@link #policyLock}
+     */
+    @Nonnull
+    private final HashMap<K, Entry<V>> tracked = new HashMap<>();
+    /**
+     * Entries ordered by time when they should be checked for expiration,
+     * guarded by {@link #policyLock}
+     */
+    @Nullable
+    private final PriorityQueue<Expiration<K, V>> expirations;
+    @Nonnull
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final long expireAfterWriteMillis;
+    private final long expireAfterAccessMillis;
+    private final long refreshAfterWriteMillis;
+    @Nullable
+    private final Scheduler scheduler;
+    @Nullable
+    private final StatsCounter stats;
+    @Nonnull
+    private final Strength valueStrength;
+    @Nullable
+    private final ReferenceQueue<V> referenceQueue;
 
     /**
      * Cache providers, it should generate values for given key
@@ -50,12 +144,83 @@ public class Cache<K, V> {
     }
 
     /**
-     * Create cache
+     * Cache provider that can generate values for many keys at once.
+     *
+     * <p>It's used by {@link #getAll(Collection)} to load all missing values in one call</p>
+     *
+     * @param <K> key
+     * @param <V> value
+     */
+    public interface BatchCacheProvider<K, V> extends CacheProvider<K, V> {
+        /**
+         * Generate values for keys
+         *
+         * @param keys keys, never empty
+         * @return values for every key
+         */
+        @Nonnull
+        Map<K, V> loadAll(@Nonnull Collection<K> keys);
+    }
+
+    /**
+     * Calculates weight of cache entries
+     *
+     * @param <K> key
+     * @param <V> value
+     */
+    public interface Weigher<K, V> {
+        /**
+         * Return weight of entry, weight is calculated once when entry is added to cache
+         *
+         * @param key key
+         * @param value value
+         * @return non negative weight of entry
+         */
+        int weigh(@Nonnull K key, @Nonnull V value);
+    }
+
+    /**
+     * Create cache that never free memory
      *
      * @param provider generator for keys
      */
     public Cache(@Nonnull  CacheProvider<K, V> provider) {
-        this.provider = provider;
+        this(new Builder<>(provider));
+    }
+
+    private Cache(@Nonnull Builder<K, V> builder) {
+        provider = builder.provider;
+        if (builder.maximumWeight >= 0) {
+            weigher = builder.weigher;
+            policy = new SegmentedLruPolicy<>(builder.maximumWeight);
+            readBuffer = new ReadBuffer<>();
+        } else {
+            weigher = null;
+            policy = null;
+            readBuffer = null;
+        }
+        valueStrength = builder.valueStrength;
+        referenceQueue = valueStrength == Strength.STRONG ? null : new ReferenceQueue<V>();
+        expireAfterWriteMillis = builder.expireAfterWriteMillis;
+        expireAfterAccessMillis = builder.expireAfterAccessMillis;
+        refreshAfterWriteMillis = builder.refreshAfterWriteMillis;
+        expirations = expireAfterWriteMillis >= 0 || expireAfterAccessMillis >= 0
+                ? new PriorityQueue<Expiration<K, V>>() : null;
+        scheduler = builder.scheduler;
+        stats = builder.recordStats ? new StatsCounter() : null;
+    }
+
+    /**
+     * Create builder for cache
+     *
+     * @param provider generator for keys
+     * @param <K> key of cache
+     * @param <V> value of cache
+     * @return builder
+     */
+    @Nonnull
+    public static <K, V> Builder<K, V> builder(@Nonnull CacheProvider<K, V> provider) {
+        return new Builder<>(provider);
     }
 
     /**
@@ -65,14 +230,1035 @@ public class Cache<K, V> {
      */
     @Nonnull
     public V get(@Nonnull K key) {
-        synchronized (cached) {
-            final V value = cached.get(key);
+        checkNotNull(key);
+        drainReferenceQueue();
+        while (true) {
+            final Entry<V> entry = cached.get(key);
+            if (entry == null) {
+                final Entry<V> newEntry = new Entry<>();
+                if (cached.putIfAbsent(key, newEntry) == null) {
+                    recordMiss();
+                    return load(key, newEntry);
+                }
+                continue;
+            }
+            final V value = readLoaded(key, entry);
             if (value != null) {
                 return value;
             }
-            final V newValue = provider.load(key);
-            cached.put(key, newValue);
-            return newValue;
+            if (entry.isLoaded()) {
+                // value was garbage collected or expired
+                continue;
+            }
+            recordMiss();
+            final V loadedValue = entry.await();
+            if (loadedValue != null) {
+                return loadedValue;
+            }
+        }
+    }
+
+    /**
+     * Get values for many keys from cache.
+     *
+     * <p>Values that are already cached are returned directly. All missing values are loaded
+     * with single {@link BatchCacheProvider#loadAll(Collection)} call if provider implements
+     * {@link BatchCacheProvider}, otherwise they are loaded one by one.</p>
+     *
+     * @param keys keys
+     * @return values in the same order as keys
+     */
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Collection<? extends K> keys) {
+        checkNotNull(keys);
+        drainReferenceQueue();
+        final Map<K, V> found = new HashMap<>(keys.size());
+        final Map<K, Entry<V>> toLoad = new LinkedHashMap<>();
+        final Map<K, Entry<V>> loadedByOthers = new HashMap<>();
+        for (K key : keys) {
+            checkNotNull(key);
+            if (found.containsKey(key) || toLoad.containsKey(key) || loadedByOthers.containsKey(key)) {
+                continue;
+            }
+            while (true) {
+                final Entry<V> entry = cached.get(key);
+                if (entry == null) {
+                    final Entry<V> newEntry = new Entry<>();
+                    if (cached.putIfAbsent(key, newEntry) == null) {
+                        recordMiss();
+                        toLoad.put(key, newEntry);
+                        break;
+                    }
+                    continue;
+                }
+                final V value = readLoaded(key, entry);
+                if (value != null) {
+                    found.put(key, value);
+                    break;
+                }
+                if (!entry.isLoaded()) {
+                    recordMiss();
+                    loadedByOthers.put(key, entry);
+                    break;
+                }
+            }
+        }
+
+        if (!toLoad.isEmpty()) {
+            found.putAll(loadAll(toLoad));
+        }
+        for (Map.Entry<K, Entry<V>> waiting : loadedByOthers.entrySet()) {
+            final V value = waiting.getValue().await();
+            found.put(waiting.getKey(), value != null ? value : get(waiting.getKey()));
+        }
+
+        final Map<K, V> result = new LinkedHashMap<>(found.size());
+        for (K key : keys) {
+            result.put(key, found.get(key));
+        }
+        return result;
+    }
+
+    /**
+     * Get value from cache asynchronously.
+     *
+     * <p>Cache is checked on subscription, not when observable is created, so observable
+     * can be subscribed many times and always returns current value. If value is already in
+     * cache it's returned immediately, otherwise value is loaded on given scheduler.
+     * Concurrent subscribers for the same key share one load. Value is emitted only when
+     * requested, and subscriber that unsubscribed before value was loaded does not receive
+     * it, but load is not cancelled because it can be shared.</p>
+     *
+     * @param key key
+     * @param scheduler scheduler on which {@link CacheProvider#load(Object)} will be called
+     * @return observable that returns value and completes
+     */
+    @Nonnull
+    public Observable<V> getAsync(@Nonnull final K key, @Nonnull final Scheduler scheduler) {
+        checkNotNull(key);
+        checkNotNull(scheduler);
+        return Observable.create(new Observable.OnSubscribe<V>() {
+            @Override
+            public void call(Subscriber<? super V> child) {
+                final SingleDelayedProducer<V> producer = new SingleDelayedProducer<>(child);
+                child.setProducer(producer);
+                if (child.isUnsubscribed()) {
+                    return;
+                }
+                drainReferenceQueue();
+                while (true) {
+                    final Entry<V> entry = cached.get(key);
+                    if (entry == null) {
+                        final Entry<V> newEntry = new Entry<>();
+                        if (cached.putIfAbsent(key, newEntry) == null) {
+                            recordMiss();
+                            waitFor(newEntry, child, producer);
+                            loadOn(scheduler, key, newEntry);
+                            return;
+                        }
+                        continue;
+                    }
+                    final V value = readLoaded(key, entry);
+                    if (value != null) {
+                        producer.setValue(value);
+                        return;
+                    }
+                    if (entry.isLoaded()) {
+                        continue;
+                    }
+                    if (waitFor(entry, child, producer)) {
+                        recordMiss();
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Deliver value of entry to subscriber when it will be loaded
+     *
+     * @return false if loading already finished and subscriber was not registered
+     */
+    private boolean waitFor(@Nonnull final Entry<V> entry,
+                            @Nonnull Subscriber<? super V> child,
+                            @Nonnull SingleDelayedProducer<V> producer) {
+        final Waiter<V> waiter = new Waiter<>(child, producer);
+        if (!entry.subscribe(waiter)) {
+            return false;
+        }
+        child.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                entry.unsubscribe(waiter);
+            }
+        }));
+        return true;
+    }
+
+    private void loadOn(@Nonnull Scheduler scheduler, @Nonnull final K key, @Nonnull final Entry<V> entry) {
+        final Scheduler.Worker worker = scheduler.createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    load(key, entry);
+                } catch (RuntimeException | Error ignore) {
+                    // error is already delivered to subscribers of entry
+                } finally {
+                    worker.unsubscribe();
+                }
+            }
+        });
+    }
+
+    /**
+     * Remove expired and garbage collected values.
+     *
+     * <p>Cache does it when values are loaded, so you only need to call it if you want to
+     * release memory when cache is not used</p>
+     */
+    public void cleanUp() {
+        drainReferenceQueue();
+        if (policy == null && expirations == null) {
+            return;
+        }
+        policyLock.lock();
+        try {
+            drainReadBuffer();
+            if (expirations != null) {
+                removeExpired(now());
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Current statistics of cache
+     *
+     * @return statistics, all zeros if cache was not created with {@link Builder#recordStats()}
+     */
+    @Nonnull
+    public CacheStats stats() {
+        return stats == null ? new CacheStats(0, 0, 0, 0, 0, 0, 0) : stats.snapshot();
+    }
+
+    /**
+     * Number of values currently stored in cache
+     * @return number of values
+     */
+    public int size() {
+        return cached.size();
+    }
+
+    @Nonnull
+    private V load(@Nonnull K key, @Nonnull Entry<V> entry) {
+        final long startTime = System.nanoTime();
+        final V value;
+        try {
+            value = checkNotNull(provider.load(key), "CacheProvider returned null value");
+        } catch (RuntimeException | Error e) {
+            recordLoad(false, startTime);
+            failLoading(key, entry, e);
+            throw e;
+        }
+        recordLoad(true, startTime);
+        finishLoading(key, entry, value);
+        return value;
+    }
+
+    @Nonnull
+    private Map<K, V> loadAll(@Nonnull Map<K, Entry<V>> entries) {
+        if (!(provider instanceof BatchCacheProvider)) {
+            final Map<K, V> values = new HashMap<>(entries.size());
+            for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+                try {
+                    values.put(entry.getKey(), load(entry.getKey(), entry.getValue()));
+                } catch (RuntimeException | Error e) {
+                    failLoading(entries, e);
+                    throw e;
+                }
+            }
+            return values;
+        }
+
+        final long startTime = System.nanoTime();
+        final Map<K, V> values;
+        try {
+            values = checkNotNull(((BatchCacheProvider<K, V>) provider).loadAll(
+                    new ArrayList<>(entries.keySet())), "BatchCacheProvider returned null");
+        } catch (RuntimeException | Error e) {
+            recordLoad(false, startTime);
+            failLoading(entries, e);
+            throw e;
+        }
+        recordLoad(true, startTime);
+        RuntimeException missing = null;
+        for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+            final V value = values.get(entry.getKey());
+            if (value == null) {
+                missing = new IllegalStateException(
+                        "BatchCacheProvider did not return value for key: " + entry.getKey());
+                failLoading(entry.getKey(), entry.getValue(), missing);
+            } else {
+                finishLoading(entry.getKey(), entry.getValue(), value);
+            }
+        }
+        if (missing != null) {
+            throw missing;
+        }
+        return values;
+    }
+
+    private void finishLoading(@Nonnull K key, @Nonnull Entry<V> entry, @Nonnull V value) {
+        entry.setTime(now());
+        entry.set(value, createReference(key, entry, value));
+        recordInsert(key, entry, value);
+    }
+
+    private void failLoading(@Nonnull K key, @Nonnull Entry<V> entry, @Nonnull Throwable e) {
+        cached.remove(key, entry);
+        entry.setError(e);
+    }
+
+    private void failLoading(@Nonnull Map<K, Entry<V>> entries, @Nonnull Throwable e) {
+        for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+            if (!entry.getValue().isFinished()) {
+                failLoading(entry.getKey(), entry.getValue(), e);
+            }
+        }
+    }
+
+    /**
+     * Read value of loaded entry.
+     *
+     * <p>If value was garbage collected or expired entry is removed from cache</p>
+     *
+     * @return value or null if entry is not loaded yet or was removed
+     */
+    @Nullable
+    private V readLoaded(@Nonnull K key, @Nonnull Entry<V> entry) {
+        final V value = entry.getIfLoaded();
+        if (value == null) {
+            if (entry.isLoaded()) {
+                removeEntry(key, entry);
+            }
+            return null;
+        }
+        if (expirations != null || refreshAfterWriteMillis >= 0) {
+            final long now = now();
+            if (expirationTime(entry) <= now) {
+                removeEntry(key, entry);
+                return null;
+            }
+            if (expireAfterAccessMillis >= 0) {
+                entry.accessTime = now;
+            }
+            if (refreshAfterWriteMillis >= 0
+                    && now - entry.writeTime >= refreshAfterWriteMillis
+                    && entry.startRefresh()) {
+                refresh(key, entry);
+            }
+        }
+        recordAccess(key);
+        if (stats != null) {
+            stats.hits.increment();
+        }
+        return value;
+    }
+
+    private void refresh(@Nonnull final K key, @Nonnull final Entry<V> entry) {
+        final Scheduler.Worker worker = (scheduler == null ? Schedulers.io() : scheduler).createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                final long startTime = System.nanoTime();
+                try {
+                    final V value = checkNotNull(provider.load(key), "CacheProvider returned null value");
+                    recordLoad(true, startTime);
+                    final Entry<V> newEntry = new Entry<>();
+                    newEntry.setTime(now());
+                    newEntry.set(value, createReference(key, newEntry, value));
+                    replaceRefreshed(key, entry, newEntry, value);
+                } catch (RuntimeException | Error ignore) {
+                    recordLoad(false, startTime);
+                    // keep old value and try to refresh it again on next read
+                    entry.finishRefresh();
+                } finally {
+                    worker.unsubscribe();
+                }
+            }
+        });
+    }
+
+    private long expirationTime(@Nonnull Entry<V> entry) {
+        long time = Long.MAX_VALUE;
+        if (expireAfterWriteMillis >= 0) {
+            time = Math.min(time, entry.writeTime + expireAfterWriteMillis);
+        }
+        if (expireAfterAccessMillis >= 0) {
+            time = Math.min(time, entry.accessTime + expireAfterAccessMillis);
+        }
+        return time;
+    }
+
+    /**
+     * Remove entries that expired, guarded by {@link #policyLock}
+     *
+     * <p>Only entries which expiration time passed are checked. Entry that was accessed
+     * since it was queued is queued again with new expiration time.</p>
+     */
+    private void removeExpired(long now) {
+        final PriorityQueue<Expiration<K, V>> expirations = checkNotNull(this.expirations);
+        while (!expirations.isEmpty() && expirations.peek().time <= now) {
+            final Expiration<K, V> expiration = expirations.poll();
+            if (cached.get(expiration.key) != expiration.entry) {
+                continue;
+            }
+            final long time = expirationTime(expiration.entry);
+            if (time <= now) {
+                if (cached.remove(expiration.key, expiration.entry)) {
+                    recordEviction();
+                    untrack(expiration.key, expiration.entry);
+                }
+            } else {
+                expirations.add(new Expiration<>(expiration.key, expiration.entry, time));
+            }
+        }
+    }
+
+    private long now() {
+        return scheduler == null ? System.currentTimeMillis() : scheduler.now();
+    }
+
+    @Nonnull
+    private ValueReference<V> createReference(@Nonnull K key, @Nonnull Entry<V> entry, @Nonnull V value) {
+        switch (valueStrength) {
+            case STRONG:
+                return new StrongValueReference<>(value);
+            case WEAK:
+                return new WeakValueReference<>(key, entry, value, checkNotNull(referenceQueue));
+            case SOFT:
+                return new SoftValueReference<>(key, entry, value, checkNotNull(referenceQueue));
+            default:
+                throw new IllegalStateException("Unknown strength: " + valueStrength);
+        }
+    }
+
+    /**
+     * Remove entries which values were garbage collected.
+     *
+     * <p>If nothing was collected this is just single volatile read</p>
+     */
+    private void drainReferenceQueue() {
+        if (referenceQueue == null) {
+            return;
+        }
+        Reference<? extends V> reference;
+        while ((reference = referenceQueue.poll()) != null) {
+            @SuppressWarnings("unchecked")
+            final CollectedReference<K, V> collected = (CollectedReference<K, V>) reference;
+            if (removeEntry(collected.key(), collected.entry())) {
+                recordEviction();
+            }
+        }
+    }
+
+    private boolean removeEntry(@Nonnull K key, @Nonnull Entry<V> entry) {
+        if (policy == null && expirations == null) {
+            return cached.remove(key, entry);
+        }
+        policyLock.lock();
+        try {
+            final boolean removed = cached.remove(key, entry);
+            if (removed) {
+                untrack(key, entry);
+            }
+            return removed;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    private void recordAccess(@Nonnull K key) {
+        // Access is only a hint for eviction, so it's buffered without lock and passed to
+        // policy when policy is needed, some accesses can be lost when buffer is full
+        if (readBuffer != null) {
+            readBuffer.add(key);
+        }
+    }
+
+    /**
+     * Guarded by {@link #policyLock}
+     */
+    private void drainReadBuffer() {
+        if (readBuffer == null) {
+            return;
+        }
+        final SegmentedLruPolicy<K> policy = checkNotNull(this.policy);
+        readBuffer.drain(new Action1<K>() {
+            @Override
+            public void call(K key) {
+                policy.onAccess(key);
+            }
+        });
+    }
+
+    private void recordInsert(@Nonnull K key, @Nonnull Entry<V> entry, @Nonnull V value) {
+        if (policy == null && expirations == null) {
+            return;
+        }
+        final int weight = policy == null ? 0 : weigh(key, value);
+        policyLock.lock();
+        try {
+            // entry could be removed while it was loading, then it's not counted
+            if (cached.get(key) == entry) {
+                insert(key, entry, weight);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Replace refreshed entry, replacement and registration in policy are done under the same
+     * lock, so eviction can not remove new entry before it's counted
+     */
+    private void replaceRefreshed(@Nonnull K key,
+                                  @Nonnull Entry<V> entry,
+                                  @Nonnull Entry<V> newEntry,
+                                  @Nonnull V value) {
+        if (policy == null && expirations == null) {
+            cached.replace(key, entry, newEntry);
+            return;
+        }
+        final int weight = policy == null ? 0 : weigh(key, value);
+        policyLock.lock();
+        try {
+            if (cached.replace(key, entry, newEntry)) {
+                insert(key, newEntry, weight);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Guarded by {@link #policyLock}
+     */
+    private void insert(@Nonnull K key, @Nonnull Entry<V> entry, int weight) {
+        if (policy != null) {
+            drainReadBuffer();
+            tracked.put(key, entry);
+            for (K evicted : policy.onInsert(key, weight)) {
+                // remove only counted entry, never entry that is loading or was refreshed
+                final Entry<V> trackedEntry = tracked.remove(evicted);
+                if (trackedEntry != null && cached.remove(evicted, trackedEntry)) {
+                    recordEviction();
+                }
+            }
+        }
+        if (expirations != null) {
+            expirations.add(new Expiration<>(key, entry, expirationTime(entry)));
+            removeExpired(now());
+        }
+    }
+
+    /**
+     * Guarded by {@link #policyLock}
+     */
+    private void untrack(@Nonnull K key, @Nonnull Entry<V> entry) {
+        if (policy != null && tracked.get(key) == entry) {
+            tracked.remove(key);
+            policy.onRemove(key);
+        }
+    }
+
+    private void recordMiss() {
+        if (stats != null) {
+            stats.misses.increment();
+        }
+    }
+
+    private void recordLoad(boolean success, long startTime) {
+        if (stats != null) {
+            stats.recordLoad(success, System.nanoTime() - startTime);
+        }
+    }
+
+    private void recordEviction() {
+        if (stats != null) {
+            stats.evictions.increment();
+        }
+    }
+
+    private int weigh(@Nonnull K key, @Nonnull V value) {
+        if (weigher == null) {
+            return 1;
+        }
+        final int weight = weigher.weigh(key, value);
+        checkState(weight >= 0, "Weigher returned negative weight: %s", weight);
+        return weight;
+    }
+
+    private static class StatsCounter {
+        private final StripedCounter hits = new StripedCounter();
+        private final StripedCounter misses = new StripedCounter();
+        private final StripedCounter loadSuccesses = new StripedCounter();
+        private final StripedCounter loadFailures = new StripedCounter();
+        private final StripedCounter totalLoadTime = new StripedCounter();
+        private final AtomicLong maxLoadTime = new AtomicLong();
+        private final StripedCounter evictions = new StripedCounter();
+
+        void recordLoad(boolean success, long loadTime) {
+            (success ? loadSuccesses : loadFailures).increment();
+            totalLoadTime.add(loadTime);
+            long max;
+            while ((max = maxLoadTime.get()) < loadTime) {
+                if (maxLoadTime.compareAndSet(max, loadTime)) {
+                    break;
+                }
+            }
+        }
+
+        @Nonnull
+        CacheStats snapshot() {
+            return new CacheStats(hits.sum(), misses.sum(), loadSuccesses.sum(), loadFailures.sum(),
+                    totalLoadTime.sum(), maxLoadTime.get(), evictions.sum());
+        }
+    }
+
+    private static class Expiration<K, V> implements Comparable<Expiration<K, V>> {
+        @Nonnull
+        private final K key;
+        @Nonnull
+        private final Entry<V> entry;
+        private final long time;
+
+        Expiration(@Nonnull K key, @Nonnull Entry<V> entry, long time) {
+            this.key = key;
+            this.entry = entry;
+            this.time = time;
+        }
+
+        @Override
+        public int compareTo(@Nonnull Expiration<K, V> another) {
+            return time < another.time ? -1 : (time == another.time ? 0 : 1);
+        }
+    }
+
+    private enum Strength {
+        STRONG, WEAK, SOFT
+    }
+
+    private interface ValueReference<V> {
+        @Nullable
+        V get();
+    }
+
+    private interface CollectedReference<K, V> {
+        @Nonnull
+        K key();
+
+        @Nonnull
+        Entry<V> entry();
+    }
+
+    private static class StrongValueReference<V> implements ValueReference<V> {
+        @Nonnull
+        private final V value;
+
+        StrongValueReference(@Nonnull V value) {
+            this.value = value;
+        }
+
+        @Nonnull
+        @Override
+        public V get() {
+            return value;
+        }
+    }
+
+    private static class WeakValueReference<K, V> extends WeakReference<V>
+            implements ValueReference<V>, CollectedReference<K, V> {
+        @Nonnull
+        private final K key;
+        @Nonnull
+        private final Entry<V> entry;
+
+        WeakValueReference(@Nonnull K key, @Nonnull Entry<V> entry, @Nonnull V value,
+                           @Nonnull ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+            this.entry = entry;
+        }
+
+        @Nonnull
+        @Override
+        public K key() {
+            return key;
+        }
+
+        @Nonnull
+        @Override
+        public Entry<V> entry() {
+            return entry;
+        }
+    }
+
+    private static class SoftValueReference<K, V> extends SoftReference<V>
+            implements ValueReference<V>, CollectedReference<K, V> {
+        @Nonnull
+        private final K key;
+        @Nonnull
+        private final Entry<V> entry;
+
+        SoftValueReference(@Nonnull K key, @Nonnull Entry<V> entry, @Nonnull V value,
+                           @Nonnull ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+            this.entry = entry;
+        }
+
+        @Nonnull
+        @Override
+        public K key() {
+            return key;
+        }
+
+        @Nonnull
+        @Override
+        public Entry<V> entry() {
+            return entry;
+        }
+    }
+
+    /**
+     * Subscriber of {@link #getAsync(Object, Scheduler)} that waits for loading value
+     */
+    private static class Waiter<V> {
+        @Nonnull
+        private final Subscriber<? super V> child;
+        @Nonnull
+        private final SingleDelayedProducer<V> producer;
+
+        Waiter(@Nonnull Subscriber<? super V> child, @Nonnull SingleDelayedProducer<V> producer) {
+            this.child = child;
+            this.producer = producer;
+        }
+
+        void onValue(@Nonnull V value) {
+            // producer emits only if child is subscribed and requested value
+            producer.setValue(value);
+        }
+
+        void onError(@Nonnull Throwable error) {
+            if (!child.isUnsubscribed()) {
+                child.onError(error);
+            }
+        }
+    }
+
+    private static class Entry<V> {
+        @Nonnull
+        private final CountDownLatch latch = new CountDownLatch(1);
+        @Nullable
+        private volatile ValueReference<V> reference;
+        @Nullable
+        private volatile Throwable error;
+        /**
+         * Guarded by this, null when loading finished
+         */
+        @Nullable
+        private List<Waiter<V>> subscribers = new ArrayList<>(0);
+        private volatile long writeTime;
+        private volatile long accessTime;
+        /**
+         * Guarded by this
+         */
+        private boolean refreshing;
+
+        void setTime(long time) {
+            writeTime = time;
+            accessTime = time;
+        }
+
+        /**
+         * @return true if refresh should be started by caller
+         */
+        synchronized boolean startRefresh() {
+            if (refreshing) {
+                return false;
+            }
+            refreshing = true;
+            return true;
+        }
+
+        synchronized void finishRefresh() {
+            refreshing = false;
+        }
+
+        /**
+         * @return true if value was loaded, even if it was already garbage collected
+         */
+        boolean isLoaded() {
+            return reference != null;
+        }
+
+        /**
+         * @return value or null if value is not loaded yet or was garbage collected
+         */
+        @Nullable
+        V getIfLoaded() {
+            final ValueReference<V> reference = this.reference;
+            return reference == null ? null : reference.get();
+        }
+
+        void set(@Nonnull V value, @Nonnull ValueReference<V> reference) {
+            this.reference = reference;
+            latch.countDown();
+            for (Waiter<V> subscriber : finish()) {
+                subscriber.onValue(value);
+            }
+        }
+
+        void setError(@Nonnull Throwable error) {
+            this.error = error;
+            latch.countDown();
+            for (Waiter<V> subscriber : finish()) {
+                subscriber.onError(error);
+            }
+        }
+
+        /**
+         * Deliver value to subscriber when it will be loaded
+         *
+         * @return false if loading already finished and subscriber was not registered
+         */
+        synchronized boolean subscribe(@Nonnull Waiter<V> subscriber) {
+            if (subscribers == null) {
+                return false;
+            }
+            subscribers.add(subscriber);
+            return true;
+        }
+
+        synchronized void unsubscribe(@Nonnull Waiter<V> subscriber) {
+            if (subscribers != null) {
+                subscribers.remove(subscriber);
+            }
+        }
+
+        synchronized boolean isFinished() {
+            return subscribers == null;
+        }
+
+        @Nonnull
+        private synchronized List<Waiter<V>> finish() {
+            final List<Waiter<V>> subscribers = checkNotNull(this.subscribers);
+            this.subscribers = null;
+            return subscribers;
+        }
+
+        /**
+         * Wait until value is loaded
+         *
+         * @return value or null if value was already garbage collected
+         */
+        @Nullable
+        V await() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        latch.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final Throwable error = this.error;
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            }
+            return getIfLoaded();
+        }
+    }
+
+    /**
+     * Builder for {@link Cache}
+     *
+     * @param <K> key of cache
+     * @param <V> value of cache
+     */
+    public static class Builder<K, V> {
+        @Nonnull
+        private final CacheProvider<K, V> provider;
+        private long maximumWeight = -1;
+        @Nullable
+        private Weigher<? super K, ? super V> weigher;
+        @Nonnull
+        private Strength valueStrength = Strength.STRONG;
+        private long expireAfterWriteMillis = -1;
+        private long expireAfterAccessMillis = -1;
+        private long refreshAfterWriteMillis = -1;
+        @Nullable
+        private Scheduler scheduler;
+        private boolean recordStats;
+
+        private Builder(@Nonnull CacheProvider<K, V> provider) {
+            this.provider = checkNotNull(provider);
+        }
+
+        /**
+         * Limit number of values stored in cache.
+         *
+         * <p>When limit is exceeded values that were used only once are removed first,
+         * values that were used more often are kept longer (segmented LRU)</p>
+         *
+         * @param maximumSize maximum number of values
+         * @return builder
+         */
+        @Nonnull
+        public Builder<K, V> maximumSize(long maximumSize) {
+            checkArgument(maximumSize >= 0, "maximumSize can not be negative");
+            checkState(this.maximumWeight < 0, "maximum size or weight was already set");
+            this.maximumWeight = maximumSize;
+            return this;
+        }
+
+        /**
+         * Limit total weight of values stored in cache.
+         *
+         * @param maximumWeight maximum total weight of values
+         * @param weigher calculates weight of every value
+         * @return builder
+         * @see #maximumSize(long)
+         */
+        @Nonnull
+        public Builder<K, V> maximumWeight(long maximumWeight,
+                                           @Nonnull Weigher<? super K, ? super V> weigher) {
+            checkArgument(maximumWeight >= 0, "maximumWeight can not be negative");
+            checkState(this.maximumWeight < 0, "maximum size or weight was already set");
+            this.maximumWeight = maximumWeight;
+            this.weigher = checkNotNull(weigher);
+            return this;
+        }
+
+        /**
+         * Hold values by {@link WeakReference}.
+         *
+         * <p>Value is removed from cache when it's not referenced anywhere else</p>
+         *
+         * @return builder
+         */
+        @Nonnull
+        public Builder<K, V> weakValues() {
+            checkState(valueStrength == Strength.STRONG, "value strength was already set");
+            valueStrength = Strength.WEAK;
+            return this;
+        }
+
+        /**
+         * Hold values by {@link SoftReference}.
+         *
+         * <p>Value that is not referenced anywhere else is removed from cache when memory
+         * is needed</p>
+         *
+         * @return builder
+         */
+        @Nonnull
+        public Builder<K, V> softValues() {
+            checkState(valueStrength == Strength.STRONG, "value strength was already set");
+            valueStrength = Strength.SOFT;
+            return this;
+        }
+
+        /**
+         * Remove value when given time passed since it was loaded
+         *
+         * @param duration time after value expires
+         * @param unit unit of duration
+         * @return builder
+         */
+        @Nonnull
+        public Builder<K, V> expireAfterWrite(long duration, @Nonnull TimeUnit unit) {
+            checkArgument(duration >= 0, "duration can not be negative");
+            expireAfterWriteMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Remove value when given time passed since it was last read or loaded
+         *
+         * @param duration time after value expires
+         * @param unit unit of duration
+         * @return builder
+         */
+        @Nonnull
+        public Builder<K, V> expireAfterAccess(long duration, @Nonnull TimeUnit unit) {
+            checkArgument(duration >= 0, "duration can not be negative");
+            expireAfterAccessMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Reload value in background when it's read and given time passed since it was loaded.
+         *
+         * <p>Until new value is loaded readers get old value. If reload fails old value is kept
+         * and reload is retried on next read. Reload is executed on {@link #scheduler(Scheduler)}</p>
+         *
+         * @param duration time after value should be reloaded
+         * @param unit unit of duration
+         * @return builder
+         */
+        @Nonnull
+        public Builder<K, V> refreshAfterWrite(long duration, @Nonnull TimeUnit unit) {
+            checkArgument(duration >= 0, "duration can not be negative");
+            refreshAfterWriteMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Scheduler that measures time for expiration and executes refreshes,
+         * by default {@link Schedulers#io()}
+         *
+         * @param scheduler scheduler
+         * @return builder
+         */
+        @Nonnull
+        public Builder<K, V> scheduler(@Nonnull Scheduler scheduler) {
+            this.scheduler = checkNotNull(scheduler);
+            return this;
+        }
+
+        /**
+         * Record statistics returned by {@link Cache#stats()}
+         *
+         * @return builder
+         */
+        @Nonnull
+        public Builder<K, V> recordStats() {
+            recordStats = true;
+            return this;
+        }
+
+        /**
+         * Create cache
+         *
+         * @return cache
+         */
+        @Nonnull
+        public Cache<K, V> build() {
+            return new Cache<>(this);
         }
     }
 }
\ No newline at end of file
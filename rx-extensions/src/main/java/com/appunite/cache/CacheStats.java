@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache;
+
+import com.appunite.rx.internal.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Snapshot of {@link Cache} statistics
+ *
+ * <p>Statistics are recorded only if cache was created with
+ * {@link Cache.Builder#recordStats()}, otherwise all values are zero</p>
+ */
+public class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTimeNanos;
+    private final long maxLoadTimeNanos;
+    private final long evictionCount;
+
+    public CacheStats(long hitCount,
+                      long missCount,
+                      long loadSuccessCount,
+                      long loadFailureCount,
+                      long totalLoadTimeNanos,
+                      long maxLoadTimeNanos,
+                      long evictionCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTimeNanos = totalLoadTimeNanos;
+        this.maxLoadTimeNanos = maxLoadTimeNanos;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * @return number of times value was returned from cache
+     */
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of times value had to be loaded or value was loading
+     */
+    public long missCount() {
+        return missCount;
+    }
+
+    /**
+     * @return ratio of hits to all requests or 1.0 if there were no requests
+     */
+    public double hitRate() {
+        final long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * @return number of times provider returned value
+     */
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    /**
+     * @return number of times provider thrown an exception
+     */
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * @return total time spent in provider in nanoseconds
+     */
+    public long totalLoadTimeNanos() {
+        return totalLoadTimeNanos;
+    }
+
+    /**
+     * @return the longest time of single provider call in nanoseconds
+     */
+    public long maxLoadTimeNanos() {
+        return maxLoadTimeNanos;
+    }
+
+    /**
+     * @return average time of provider call in nanoseconds
+     */
+    public double averageLoadTimeNanos() {
+        final long loadCount = loadSuccessCount + loadFailureCount;
+        return loadCount == 0 ? 0.0 : (double) totalLoadTimeNanos / loadCount;
+    }
+
+    /**
+     * @return number of values removed because of size limit, expiration or garbage collection
+     */
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CacheStats)) return false;
+
+        final CacheStats that = (CacheStats) o;
+
+        return hitCount == that.hitCount
+                && missCount == that.missCount
+                && loadSuccessCount == that.loadSuccessCount
+                && loadFailureCount == that.loadFailureCount
+                && totalLoadTimeNanos == that.totalLoadTimeNanos
+                && maxLoadTimeNanos == that.maxLoadTimeNanos
+                && evictionCount == that.evictionCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(hitCount, missCount, loadSuccessCount,
+                loadFailureCount, totalLoadTimeNanos, maxLoadTimeNanos, evictionCount);
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", loadSuccessCount=" + loadSuccessCount +
+                ", loadFailureCount=" + loadFailureCount +
+                ", totalLoadTimeNanos=" + totalLoadTimeNanos +
+                ", maxLoadTimeNanos=" + maxLoadTimeNanos +
+                ", evictionCount=" + evictionCount +
+                '}';
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+
+import rx.functions.Action1;
+
+/**
+ * Lossy buffer of keys that were read, cheap to add to from many threads.
+ *
+ * <p>Every thread adds to one of many stripes chosen by thread id, like
+ * {@link StripedCounter}, and no lock is taken. Every stripe is a ring of
+ * {@link #STRIPE_SIZE} slots. When a stripe is full, the oldest keys are overwritten, so
+ * some reads are lost. It's fine, because reads are only a hint for eviction policy.</p>
+ *
+ * <p>Keys are consumed by {@link #drain(Action1)}, that must be called by one thread at a
+ * time.</p>
+ *
+ * @param <K> key
+ */
+class ReadBuffer<K> {
+    private static final int STRIPE_SIZE = 16;
+    /**
+     * 8 longs = 64 bytes, typical cache line size
+     */
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripesCount();
+
+    private final AtomicLongArray writeCounters = new AtomicLongArray(STRIPES * PADDING);
+    private final AtomicReferenceArray<K> slots = new AtomicReferenceArray<>(STRIPES * STRIPE_SIZE);
+
+    private static int stripesCount() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors * 2) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    void add(@Nonnull K key) {
+        final long id = Thread.currentThread().getId();
+        final int stripe = (int) (id ^ (id >>> 32)) & (STRIPES - 1);
+        final long index = writeCounters.getAndIncrement(stripe * PADDING);
+        slots.lazySet(stripe * STRIPE_SIZE + (int) (index & (STRIPE_SIZE - 1)), key);
+    }
+
+    /**
+     * Pass buffered keys to action and remove them from buffer
+     *
+     * <p>Keys of one thread are passed in order they were read</p>
+     *
+     * @param action action that consumes key
+     */
+    void drain(@Nonnull Action1<? super K> action) {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            final long end = writeCounters.get(stripe * PADDING);
+            for (long i = end - STRIPE_SIZE; i < end; i++) {
+                if (i < 0) {
+                    continue;
+                }
+                final K key = slots.getAndSet(stripe * STRIPE_SIZE + (int) (i & (STRIPE_SIZE - 1)), null);
+                if (key != null) {
+                    action.call(key);
+                }
+            }
+        }
+    }
+}
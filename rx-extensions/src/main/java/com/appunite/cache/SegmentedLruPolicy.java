@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import static com.appunite.rx.internal.Preconditions.checkArgument;
+
+/**
+ * Segmented LRU eviction policy.
+ *
+ * <p>New keys are inserted into probation segment. Key that is accessed again is promoted to
+ * protected segment. When protected segment is full its least recently used key is moved
+ * back to probation segment. Keys are always evicted from probation segment first, so keys
+ * that were used only once are evicted before frequently used ones.</p>
+ *
+ * <p>Class is not thread safe</p>
+ *
+ * @param <K> key
+ */
+class SegmentedLruPolicy<K> {
+
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final long maximumWeight;
+    private final long maximumProtectedWeight;
+    @Nonnull
+    private final LinkedHashMap<K, Integer> probation = new LinkedHashMap<>(16, 0.75f, true);
+    @Nonnull
+    private final LinkedHashMap<K, Integer> protect = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationWeight;
+    private long protectedWeight;
+
+    SegmentedLruPolicy(long maximumWeight) {
+        checkArgument(maximumWeight >= 0, "maximumWeight can not be negative");
+        this.maximumWeight = maximumWeight;
+        this.maximumProtectedWeight = maximumWeight * PROTECTED_PERCENT / 100;
+    }
+
+    /**
+     * Record that key was read from cache
+     *
+     * @param key accessed key
+     */
+    void onAccess(@Nonnull K key) {
+        final Integer protectedKeyWeight = protect.get(key);
+        if (protectedKeyWeight != null) {
+            // get already moved key to the most recently used position
+            return;
+        }
+        final Integer weight = probation.remove(key);
+        if (weight == null) {
+            return;
+        }
+        probationWeight -= weight;
+        protect.put(key, weight);
+        protectedWeight += weight;
+
+        final Iterator<Map.Entry<K, Integer>> iterator = protect.entrySet().iterator();
+        while (protectedWeight > maximumProtectedWeight && iterator.hasNext()) {
+            final Map.Entry<K, Integer> demoted = iterator.next();
+            iterator.remove();
+            protectedWeight -= demoted.getValue();
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationWeight += demoted.getValue();
+        }
+    }
+
+    /**
+     * Record that new key was added to cache
+     *
+     * @param key added key
+     * @param weight weight of key
+     * @return keys that need to be removed from cache
+     */
+    @Nonnull
+    List<K> onInsert(@Nonnull K key, int weight) {
+        checkArgument(weight >= 0, "weight can not be negative");
+        onRemove(key);
+        probation.put(key, weight);
+        probationWeight += weight;
+        return evict();
+    }
+
+    /**
+     * Record that key was removed from cache
+     *
+     * @param key removed key
+     */
+    void onRemove(@Nonnull K key) {
+        final Integer weight = probation.remove(key);
+        if (weight != null) {
+            probationWeight -= weight;
+            return;
+        }
+        final Integer protectedKeyWeight = protect.remove(key);
+        if (protectedKeyWeight != null) {
+            protectedWeight -= protectedKeyWeight;
+        }
+    }
+
+    long weight() {
+        return probationWeight + protectedWeight;
+    }
+
+    @Nonnull
+    private List<K> evict() {
+        List<K> evicted = null;
+        while (weight() > maximumWeight) {
+            final LinkedHashMap<K, Integer> segment = probation.isEmpty() ? protect : probation;
+            final Iterator<Map.Entry<K, Integer>> iterator = segment.entrySet().iterator();
+            final Map.Entry<K, Integer> victim = iterator.next();
+            iterator.remove();
+            if (segment == probation) {
+                probationWeight -= victim.getValue();
+            } else {
+                protectedWeight -= victim.getValue();
+            }
+            if (evicted == null) {
+                evicted = new ArrayList<>();
+            }
+            evicted.add(victim.getKey());
+        }
+        return evicted == null ? new ArrayList<K>(0) : evicted;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that is cheap to increment from many threads.
+ *
+ * <p>Every thread increments one of many cells chosen by thread id, so threads rarely
+ * compete for the same cell. Cells are padded to not share cache lines. Reading the sum
+ * is more expensive because all cells are added together.</p>
+ *
+ * <p>It's replacement for {@code java.util.concurrent.atomic.LongAdder} that is not
+ * available in Java 7 and older Android versions.</p>
+ */
+class StripedCounter {
+    /**
+     * 8 longs = 64 bytes, typical cache line size
+     */
+    private static final int PADDING = 8;
+    private static final int CELLS = cellsCount();
+
+    private final AtomicLongArray cells = new AtomicLongArray(CELLS * PADDING);
+
+    private static int cellsCount() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int cells = 1;
+        while (cells < processors * 2) {
+            cells <<= 1;
+        }
+        return cells;
+    }
+
+    void add(long value) {
+        final long id = Thread.currentThread().getId();
+        final int cell = (int) (id ^ (id >>> 32)) & (CELLS - 1);
+        cells.addAndGet(cell * PADDING, value);
+    }
+
+    void increment() {
+        add(1L);
+    }
+
+    long sum() {
+        long sum = 0L;
+        for (int i = 0; i < CELLS; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
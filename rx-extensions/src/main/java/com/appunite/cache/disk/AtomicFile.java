@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * File that is always replaced as a whole.
+ *
+ * <p>Data is written to temporary file, forced according to {@link FsyncPolicy} and then
+ * renamed over target file, so crash during write never leaves truncated file. Readers see
+ * either previous or new content.</p>
+ *
+ * <p>On file systems where rename does not replace existing file, previous file is first
+ * renamed to backup file. If process crashes before new file takes its place, backup is
+ * restored by next read, so there is always one complete copy on disk.</p>
+ *
+ * <p>Parent directory is not forced after rename, because Java on Android can not open
+ * a directory to force it. After power loss rename can be lost even if data was forced,
+ * then previous content is read.</p>
+ *
+ * <p>Class is thread safe</p>
+ */
+@SuppressWarnings("TryFinallyCanBeTryWithResources")
+public class AtomicFile {
+
+    static final String BACKUP_SUFFIX = ".bak";
+
+    @Nonnull
+    private final File file;
+    @Nonnull
+    private final File tempFile;
+    @Nonnull
+    private final File backupFile;
+    @Nonnull
+    private final FsyncPolicy fsyncPolicy;
+    @Nonnull
+    private final Scheduler clock;
+    /**
+     * Guarded by this
+     */
+    private long lastSyncMillis = Long.MIN_VALUE;
+
+    /**
+     * Create file that uses system clock for {@link FsyncPolicy#periodic(long, java.util.concurrent.TimeUnit)}
+     *
+     * @param file target file
+     * @param fsyncPolicy when written data is forced to storage device
+     */
+    public AtomicFile(@Nonnull File file, @Nonnull FsyncPolicy fsyncPolicy) {
+        this(file, fsyncPolicy, Schedulers.immediate());
+    }
+
+    /**
+     * @param file target file
+     * @param fsyncPolicy when written data is forced to storage device
+     * @param clock clock for {@link FsyncPolicy#periodic(long, java.util.concurrent.TimeUnit)}
+     */
+    public AtomicFile(@Nonnull File file, @Nonnull FsyncPolicy fsyncPolicy, @Nonnull Scheduler clock) {
+        this.file = checkNotNull(file);
+        this.tempFile = new File(file.getPath() + ".tmp");
+        this.backupFile = new File(file.getPath() + BACKUP_SUFFIX);
+        this.fsyncPolicy = checkNotNull(fsyncPolicy);
+        this.clock = checkNotNull(clock);
+    }
+
+    @Nonnull
+    public File file() {
+        return file;
+    }
+
+    /**
+     * @return content of file or null if file does not exist
+     * @throws IOException when file can not be read
+     */
+    @Nullable
+    public synchronized byte[] read() throws IOException {
+        restoreBackup();
+        final FileInputStream inputStream;
+        try {
+            inputStream = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            final long length = inputStream.getChannel().size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("File too big: " + length);
+            }
+            final byte[] data = new byte[(int) length];
+            new DataInputStream(inputStream).readFully(data);
+            return data;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Replace content of file
+     *
+     * @param data new content
+     * @throws IOException when file can not be written, previous content is kept
+     */
+    public synchronized void write(@Nonnull byte[] data) throws IOException {
+        checkNotNull(data);
+        final long now = clock.now();
+        final boolean force = fsyncPolicy.shouldSync(lastSyncMillis, now);
+        write(data, force);
+        if (force) {
+            lastSyncMillis = now;
+        }
+    }
+
+    /**
+     * Replace content of file, used by owners that share one {@link FsyncPolicy} clock
+     * between many files
+     *
+     * @param data new content
+     * @param force true if data should be forced to storage device before rename
+     * @throws IOException when file can not be written, previous content is kept
+     */
+    synchronized void write(@Nonnull byte[] data, boolean force) throws IOException {
+        final FileOutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            outputStream.write(data);
+            if (force) {
+                outputStream.getChannel().force(true);
+            }
+        } catch (IOException e) {
+            outputStream.close();
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw e;
+        }
+        outputStream.close();
+        restoreBackup();
+        if (tempFile.renameTo(file)) {
+            return;
+        }
+        // some file systems do not replace existing files on rename, so keep previous
+        // file as backup until new one takes its place
+        if (file.exists() && !file.renameTo(backupFile)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("Can not replace " + file);
+        }
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            //noinspection ResultOfMethodCallIgnored
+            backupFile.renameTo(file);
+            throw new IOException("Can not replace " + file);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        backupFile.delete();
+    }
+
+    /**
+     * Restore previous file if write crashed after it was moved to backup, or remove backup
+     * if new file already took its place
+     */
+    synchronized void restoreBackup() {
+        if (!backupFile.exists()) {
+            return;
+        }
+        if (file.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            backupFile.delete();
+        } else {
+            //noinspection ResultOfMethodCallIgnored
+            backupFile.renameTo(file);
+        }
+    }
+
+    /**
+     * Remove file
+     */
+    public synchronized void delete() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        //noinspection ResultOfMethodCallIgnored
+        backupFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        tempFile.delete();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Encodes values with {@link BinaryWriter} and decodes them with {@link BinaryReader}
+ *
+ * <p>Fields have to be decoded in the same order they were encoded</p>
+ *
+ * @param <T> type of value
+ * @see BinarySerializer
+ */
+public interface BinaryCodec<T> {
+
+    void encode(@Nonnull T value, @Nonnull BinaryWriter writer) throws IOException;
+
+    @Nonnull
+    T decode(@Nonnull BinaryReader reader) throws IOException;
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * Reads values written by {@link BinaryWriter}
+ *
+ * <p>Malformed data causes {@link IOException}</p>
+ *
+ * <p>Class is not thread safe</p>
+ */
+public final class BinaryReader {
+
+    @Nonnull
+    private final ByteBuffer buffer;
+    @Nonnull
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * @param data bytes written by {@link BinaryWriter}
+     */
+    public BinaryReader(@Nonnull byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * @param buffer buffer positioned at the beginning of data written by {@link BinaryWriter}
+     */
+    public BinaryReader(@Nonnull ByteBuffer buffer) {
+        this.buffer = checkNotNull(buffer);
+    }
+
+    public long readVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = readRawByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public long readSignedVarint() throws IOException {
+        final long zigZag = readVarint();
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    /**
+     * @return varint that has to fit in non negative int
+     * @throws IOException if data is malformed or number is negative or too big
+     */
+    public int readInt() throws IOException {
+        final long value = readVarint();
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Number out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readByte() throws IOException {
+        return readRawByte();
+    }
+
+    @Nonnull
+    public byte[] readBytes() throws IOException {
+        final int length = readLength();
+        final byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * Same as {@link #readBytes()} but returns view of underlying data without copying
+     *
+     * @return read only buffer
+     * @throws IOException when data is malformed
+     */
+    @Nonnull
+    public ByteBuffer readByteBuffer() throws IOException {
+        final int length = readLength();
+        final ByteBuffer value = buffer.slice();
+        value.limit(length);
+        buffer.position(buffer.position() + length);
+        return value.asReadOnlyBuffer();
+    }
+
+    @Nullable
+    public String readString() throws IOException {
+        final long tag = readVarint();
+        if (tag == BinaryWriter.STRING_NULL) {
+            return null;
+        }
+        if (tag == BinaryWriter.STRING_LITERAL) {
+            final int length = readLength();
+            final String value;
+            if (buffer.hasArray()) {
+                value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                        BinaryWriter.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                final byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                value = new String(bytes, BinaryWriter.UTF_8);
+            }
+            strings.add(value);
+            return value;
+        }
+        final long index = tag - BinaryWriter.STRING_REFERENCE;
+        if (index < 0 || index >= strings.size()) {
+            throw new IOException("Unknown string reference: " + index);
+        }
+        return strings.get((int) index);
+    }
+
+    /**
+     * @return true if there is more data to read
+     */
+    public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+
+    private int readLength() throws IOException {
+        final int length = readInt();
+        if (length > buffer.remaining()) {
+            throw new IOException("Length " + length + " exceeds remaining " + buffer.remaining());
+        }
+        return length;
+    }
+
+    private byte readRawByte() throws IOException {
+        try {
+            return buffer.get();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Unexpected end of data", e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * {@link Serializer} that stores values in compact binary format using {@link BinaryCodec}
+ *
+ * <p>Data starts with header, so data written in other format (i.e. JSON written by previous
+ * version of application) can be recognized and read by legacy serializer. Data read by
+ * legacy serializer is written in binary format with the next write.</p>
+ *
+ * <p>Values can be decoded directly from memory mapped buffer, so only pages that are read by
+ * codec are loaded from disk.</p>
+ *
+ * @param <T> type of value
+ */
+public class BinarySerializer<T> implements BufferSerializer<T> {
+
+    private static final byte[] HEADER = {0, 'A', 'U', 'B'};
+    private static final int VERSION = 1;
+
+    @Nonnull
+    private final BinaryCodec<T> codec;
+    @Nullable
+    private final Serializer<T> legacySerializer;
+
+    public BinarySerializer(@Nonnull BinaryCodec<T> codec) {
+        this(codec, null);
+    }
+
+    /**
+     * @param codec codec of value
+     * @param legacySerializer serializer used for data without binary header
+     */
+    public BinarySerializer(@Nonnull BinaryCodec<T> codec, @Nullable Serializer<T> legacySerializer) {
+        this.codec = checkNotNull(codec);
+        this.legacySerializer = legacySerializer;
+    }
+
+    @Nonnull
+    @Override
+    public byte[] serialize(@Nonnull T value) throws IOException {
+        final BinaryWriter writer = new BinaryWriter();
+        writer.writeRaw(HEADER);
+        writer.writeVarint(VERSION);
+        codec.encode(value, writer);
+        return writer.toByteArray();
+    }
+
+    @Nonnull
+    @Override
+    public T deserialize(@Nonnull byte[] data) throws IOException {
+        return deserialize(ByteBuffer.wrap(data));
+    }
+
+    @Nonnull
+    @Override
+    public T deserialize(@Nonnull ByteBuffer data) throws IOException {
+        final ByteBuffer buffer = data.slice();
+        if (!hasHeader(buffer)) {
+            if (legacySerializer == null) {
+                throw new IOException("Unknown format");
+            }
+            return legacySerializer.deserialize(toByteArray(buffer));
+        }
+        buffer.position(HEADER.length);
+        final BinaryReader reader = new BinaryReader(buffer);
+        final long version = reader.readVarint();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version: " + version);
+        }
+        return codec.decode(reader);
+    }
+
+    private static boolean hasHeader(@Nonnull ByteBuffer data) {
+        if (data.remaining() < HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.length; i++) {
+            if (data.get(i) != HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nonnull
+    private static byte[] toByteArray(@Nonnull ByteBuffer data) {
+        if (data.hasArray() && data.arrayOffset() == 0 && data.remaining() == data.array().length) {
+            return data.array();
+        }
+        final byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return bytes;
+    }
+}
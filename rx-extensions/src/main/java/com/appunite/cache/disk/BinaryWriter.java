@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.rx.internal.Preconditions.checkArgument;
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * Writes compact binary representation of values
+ *
+ * <p>Integers are written as variable length numbers (small numbers take one byte), byte
+ * arrays and strings are prefixed with their length. Strings are written only once, every
+ * next occurrence of the same string is written as reference to the first one, so repeated
+ * ids take one or two bytes.</p>
+ *
+ * <p>Class is not thread safe</p>
+ *
+ * @see BinaryReader
+ */
+public final class BinaryWriter {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final int STRING_NULL = 0;
+    static final int STRING_LITERAL = 1;
+    static final int STRING_REFERENCE = 2;
+
+    @Nonnull
+    private final Map<String, Integer> strings = new HashMap<>();
+    @Nonnull
+    private byte[] buffer;
+    private int position;
+
+    public BinaryWriter() {
+        this(256);
+    }
+
+    public BinaryWriter(int initialCapacity) {
+        checkArgument(initialCapacity >= 0, "initialCapacity can not be negative");
+        buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Write non-negative number, 7 bits per byte
+     *
+     * @param value non-negative number
+     */
+    public void writeVarint(long value) {
+        checkArgument(value >= 0, "value can not be negative");
+        writeRawVarint(value);
+    }
+
+    /**
+     * Write any number, numbers close to zero take less bytes
+     *
+     * @param value number
+     */
+    public void writeSignedVarint(long value) {
+        writeRawVarint((value << 1) ^ (value >> 63));
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Write length prefixed bytes
+     *
+     * @param value bytes
+     */
+    public void writeBytes(@Nonnull byte[] value) {
+        checkNotNull(value);
+        writeVarint(value.length);
+        writeRaw(value);
+    }
+
+    /**
+     * Write string, string that was already written is replaced with reference
+     *
+     * @param value string or null
+     */
+    public void writeString(@Nullable String value) {
+        if (value == null) {
+            writeVarint(STRING_NULL);
+            return;
+        }
+        final Integer index = strings.get(value);
+        if (index != null) {
+            writeVarint(STRING_REFERENCE + index);
+            return;
+        }
+        strings.put(value, strings.size());
+        writeVarint(STRING_LITERAL);
+        writeBytes(value.getBytes(UTF_8));
+    }
+
+    /**
+     * Write bytes without length
+     *
+     * @param value bytes
+     */
+    public void writeRaw(@Nonnull byte[] value) {
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, buffer, position, value.length);
+        position += value.length;
+    }
+
+    /**
+     * @return number of written bytes
+     */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * @return copy of written bytes
+     */
+    @Nonnull
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void writeRawVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void ensureCapacity(int bytes) {
+        final int required = position + bytes;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+    }
+}
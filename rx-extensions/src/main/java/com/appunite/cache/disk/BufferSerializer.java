@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+/**
+ * {@link Serializer} that can decode value directly from {@link ByteBuffer}, i.e. from
+ * memory mapped file, without copying data to heap first
+ *
+ * @param <T> type of value
+ * @see JournalStore#cacheCreator(String, Serializer)
+ */
+public interface BufferSerializer<T> extends Serializer<T> {
+
+    /**
+     * @param data buffer containing bytes returned previously by {@link #serialize(Object)},
+     *             from position to limit
+     * @return value
+     * @throws IOException when data is corrupted
+     */
+    @Nonnull
+    T deserialize(@Nonnull ByteBuffer data) throws IOException;
+}
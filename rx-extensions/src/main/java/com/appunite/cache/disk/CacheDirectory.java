@@ -0,0 +1,449 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import com.appunite.rx.subjects.CacheSubject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+
+import static com.appunite.rx.internal.Preconditions.checkArgument;
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * Directory of cache files with limited total size.
+ *
+ * <p>Every key is kept in its own file, replaced atomically like {@link AtomicFile}. File
+ * name is hash of key, and files are sharded into 256 subdirectories by first byte of hash,
+ * so keys can contain any characters and many keys do not make single directory slow.</p>
+ *
+ * <p>Store tracks size of all files and access order of keys. When total size exceeds
+ * maximum, the least recently used files are deleted on background scheduler, so for a
+ * short time after write directory can be larger than maximum size. Access order is kept
+ * in memory, reads do not touch file metadata. Order of files read since last
+ * {@link #trim()} is persisted by {@link #trim()} in file modification time, so it
+ * survives restart. Order restored after restart is approximate, files read before last
+ * trim are considered more recent than files written before that trim.</p>
+ *
+ * <p>Directory is scanned lazily on first operation, so store can be created on any thread.
+ * Reads, writes and removals of one key are serialized by a lock striped by key, so
+ * operations on different keys do not block each other.</p>
+ *
+ * <p>Class is thread safe</p>
+ */
+public class CacheDirectory {
+
+    private static final int SHARD_NAME_LENGTH = 2;
+    private static final int KEY_LOCKS = 16;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Nonnull
+    private final File directory;
+    private final long maxSize;
+    @Nonnull
+    private final FsyncPolicy fsyncPolicy;
+    @Nonnull
+    private final Scheduler trimScheduler;
+
+    /**
+     * Lock of a key is always taken before {@link #lock}
+     */
+    @Nonnull
+    private final Object[] keyLocks = new Object[KEY_LOCKS];
+    private final Object lock = new Object();
+    /**
+     * File names in access order with file sizes
+     *
+     * Guarded by {@link #lock}
+     */
+    @Nonnull
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * File names read since access order was persisted
+     *
+     * Guarded by {@link #lock}
+     */
+    @Nonnull
+    private final Set<String> accessed = new HashSet<>();
+    /**
+     * Guarded by {@link #lock}
+     */
+    private boolean loaded;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private long size;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private boolean trimScheduled;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private long lastSyncMillis = Long.MIN_VALUE;
+
+    /**
+     * Create store
+     *
+     * @param directory directory for cache files, created if does not exist
+     * @param maxSize maximum size in bytes of all files
+     * @param fsyncPolicy when written files are forced to storage device
+     * @param trimScheduler scheduler for removing files over size limit, usually
+     *                      {@link rx.schedulers.Schedulers#io()}, it's also a clock for
+     *                      {@link FsyncPolicy#periodic(long, java.util.concurrent.TimeUnit)}
+     */
+    public CacheDirectory(@Nonnull File directory,
+                          long maxSize,
+                          @Nonnull FsyncPolicy fsyncPolicy,
+                          @Nonnull Scheduler trimScheduler) {
+        checkArgument(maxSize >= 0, "maxSize can not be negative");
+        this.directory = checkNotNull(directory);
+        this.maxSize = maxSize;
+        this.fsyncPolicy = checkNotNull(fsyncPolicy);
+        this.trimScheduler = checkNotNull(trimScheduler);
+        for (int i = 0; i < KEY_LOCKS; i++) {
+            keyLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Return cache that keeps value for given key in this directory
+     *
+     * <p>Errors are not propagated, if value can not be read cache returns null, if value
+     * can not be written it's removed</p>
+     *
+     * @param key key of value
+     * @param serializer serializer of value
+     * @param <T> type of value
+     * @return cache
+     */
+    @Nonnull
+    public <T> CacheSubject.CacheCreator<T> cacheCreator(@Nonnull final String key,
+                                                         @Nonnull final Serializer<T> serializer) {
+        checkNotNull(key);
+        checkNotNull(serializer);
+        return new CacheSubject.CacheCreator<T>() {
+            @Nullable
+            @Override
+            public T readFromCache() {
+                try {
+                    final byte[] data = get(key);
+                    return data == null ? null : serializer.deserialize(data);
+                } catch (IOException ignore) {
+                    return null;
+                }
+            }
+
+            @Override
+            public void writeToCache(@Nullable T data) {
+                try {
+                    if (data == null) {
+                        remove(key);
+                    } else {
+                        put(key, serializer.serialize(data));
+                    }
+                } catch (IOException ignore) {
+                    remove(key);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param key key of value
+     * @return value or null if there is no value for given key
+     * @throws IOException when file can not be read
+     */
+    @Nullable
+    public byte[] get(@Nonnull String key) throws IOException {
+        checkNotNull(key);
+        final String name = fileName(key);
+        synchronized (keyLock(name)) {
+            synchronized (lock) {
+                load();
+                if (entries.get(name) == null) {
+                    // do not touch file system for keys that are not cached
+                    return null;
+                }
+                accessed.add(name);
+            }
+            return new AtomicFile(file(name), fsyncPolicy).read();
+        }
+    }
+
+    /**
+     * @param key key of value
+     * @param value new value
+     * @throws IOException when file can not be written
+     */
+    public void put(@Nonnull String key, @Nonnull byte[] value) throws IOException {
+        checkNotNull(key);
+        checkNotNull(value);
+        final String name = fileName(key);
+        synchronized (keyLock(name)) {
+            final long now = trimScheduler.now();
+            final boolean force;
+            synchronized (lock) {
+                load();
+                force = fsyncPolicy.shouldSync(lastSyncMillis, now);
+            }
+            final File file = file(name);
+            final File shard = file.getParentFile();
+            if (!shard.isDirectory() && !shard.mkdirs()) {
+                throw new IOException("Can not create " + shard);
+            }
+            new AtomicFile(file, fsyncPolicy).write(value, force);
+            synchronized (lock) {
+                if (force) {
+                    lastSyncMillis = Math.max(lastSyncMillis, now);
+                }
+                removeEntry(name);
+                entries.put(name, (long) value.length);
+                size += value.length;
+                scheduleTrimIfNeeded();
+            }
+        }
+    }
+
+    /**
+     * @param key key of value to remove
+     */
+    public void remove(@Nonnull String key) {
+        checkNotNull(key);
+        final String name = fileName(key);
+        synchronized (keyLock(name)) {
+            synchronized (lock) {
+                load();
+                removeEntry(name);
+            }
+            new AtomicFile(file(name), fsyncPolicy).delete();
+        }
+    }
+
+    /**
+     * @return size in bytes of all files
+     */
+    public long size() {
+        synchronized (lock) {
+            load();
+            return size;
+        }
+    }
+
+    /**
+     * Remove the least recently used files until size of directory does not exceed maximum
+     * size and persist access order of files read since last trim
+     *
+     * <p>Call it i.e. when application goes to background, so access order survives
+     * restart even if directory does not exceed maximum size</p>
+     */
+    public void trim() {
+        final List<String> evicted = new ArrayList<>();
+        final List<String> read = new ArrayList<>();
+        synchronized (lock) {
+            trimScheduled = false;
+            load();
+            long remaining = size;
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                if (remaining > maxSize) {
+                    evicted.add(entry.getKey());
+                    remaining -= entry.getValue();
+                } else if (accessed.contains(entry.getKey())) {
+                    read.add(entry.getKey());
+                }
+            }
+            accessed.clear();
+        }
+        for (String name : evicted) {
+            synchronized (keyLock(name)) {
+                synchronized (lock) {
+                    if (!isLeastRecentlyUsedOverSize(name)) {
+                        // written or read in the meantime
+                        continue;
+                    }
+                    removeEntry(name);
+                }
+                new AtomicFile(file(name), fsyncPolicy).delete();
+            }
+        }
+        // modification times in access order, all after files written so far
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < read.size(); i++) {
+            final String name = read.get(i);
+            synchronized (keyLock(name)) {
+                //noinspection ResultOfMethodCallIgnored
+                file(name).setLastModified(now + i - read.size() + 1);
+            }
+        }
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private boolean isLeastRecentlyUsedOverSize(@Nonnull String name) {
+        if (size <= maxSize || entries.isEmpty()) {
+            return false;
+        }
+        final Iterator<String> iterator = entries.keySet().iterator();
+        return iterator.next().equals(name);
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        final List<ScannedFile> files = new ArrayList<>();
+        final File[] shards = directory.listFiles();
+        if (shards != null) {
+            for (File shard : shards) {
+                final File[] shardFiles = shard.listFiles();
+                if (shard.getName().length() != SHARD_NAME_LENGTH || shardFiles == null) {
+                    continue;
+                }
+                for (File file : shardFiles) {
+                    if (file.getName().endsWith(AtomicFile.BACKUP_SUFFIX)) {
+                        // left by write that was interrupted by crash, target file is
+                        // scanned separately if it exists
+                        final String name = file.getName();
+                        final File target = new File(shard, name.substring(0, name.length() - AtomicFile.BACKUP_SUFFIX.length()));
+                        if (!target.exists()) {
+                            new AtomicFile(target, fsyncPolicy).restoreBackup();
+                            files.add(new ScannedFile(target.getName(), target.length(), target.lastModified()));
+                        } else {
+                            //noinspection ResultOfMethodCallIgnored
+                            file.delete();
+                        }
+                    } else if (file.getName().endsWith(TEMP_SUFFIX)) {
+                        // left by write that was interrupted by crash
+                        //noinspection ResultOfMethodCallIgnored
+                        file.delete();
+                    } else if (file.getName().startsWith(shard.getName())) {
+                        files.add(new ScannedFile(file.getName(), file.length(), file.lastModified()));
+                    }
+                }
+            }
+        }
+        Collections.sort(files, new Comparator<ScannedFile>() {
+            @Override
+            public int compare(ScannedFile lhs, ScannedFile rhs) {
+                return lhs.lastModified < rhs.lastModified
+                        ? -1 : (lhs.lastModified == rhs.lastModified ? 0 : 1);
+            }
+        });
+        for (ScannedFile file : files) {
+            entries.put(file.name, file.length);
+            size += file.length;
+        }
+        scheduleTrimIfNeeded();
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private void removeEntry(@Nonnull String name) {
+        accessed.remove(name);
+        final Long removed = entries.remove(name);
+        if (removed != null) {
+            size -= removed;
+        }
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private void scheduleTrimIfNeeded() {
+        if (trimScheduled || size <= maxSize) {
+            return;
+        }
+        trimScheduled = true;
+        final Scheduler.Worker worker = trimScheduler.createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    trim();
+                } finally {
+                    worker.unsubscribe();
+                }
+            }
+        });
+    }
+
+    @Nonnull
+    private Object keyLock(@Nonnull String name) {
+        // name is a hex hash, so its first character is uniformly distributed
+        return keyLocks[Character.digit(name.charAt(0), KEY_LOCKS)];
+    }
+
+    @Nonnull
+    private File file(@Nonnull String name) {
+        return new File(new File(directory, name.substring(0, SHARD_NAME_LENGTH)), name);
+    }
+
+    @Nonnull
+    static String fileName(@Nonnull String key) {
+        final byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        final char[] name = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            name[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            name[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(name);
+    }
+
+    private static class ScannedFile {
+        @Nonnull
+        final String name;
+        final long length;
+        final long lastModified;
+
+        ScannedFile(@Nonnull String name, long length, long lastModified) {
+            this.name = name;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import static com.appunite.rx.internal.Preconditions.checkArgument;
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * Decides when written data is forced to storage device.
+ *
+ * <p>Forcing data survives power loss or kernel crash but makes writes much slower. Without
+ * forcing, data is still safe when only the application process crashes.</p>
+ *
+ * <ul>
+ *     <li>{@link #always()} - every write is forced</li>
+ *     <li>{@link #periodic(long, TimeUnit)} - write is forced if previous force was at least
+ *     given time ago. There is no timer, forcing happens only during writes, so writes done
+ *     after the last force are not forced until next write, when writes stop they are left
+ *     to operating system</li>
+ *     <li>{@link #never()} - writes are not forced, operating system decides</li>
+ * </ul>
+ */
+public final class FsyncPolicy {
+
+    private static final FsyncPolicy ALWAYS = new FsyncPolicy(0);
+    private static final FsyncPolicy NEVER = new FsyncPolicy(-1);
+
+    private final long periodMillis;
+
+    private FsyncPolicy(long periodMillis) {
+        this.periodMillis = periodMillis;
+    }
+
+    @Nonnull
+    public static FsyncPolicy always() {
+        return ALWAYS;
+    }
+
+    @Nonnull
+    public static FsyncPolicy never() {
+        return NEVER;
+    }
+
+    /**
+     * @param period minimal time between forces, at least 1 millisecond
+     * @param unit unit of period
+     * @return policy that forces write if previous force was at least period ago
+     * @throws IllegalArgumentException if period is shorter than 1 millisecond, use
+     *                                  {@link #always()} to force every write
+     */
+    @Nonnull
+    public static FsyncPolicy periodic(long period, @Nonnull TimeUnit unit) {
+        checkNotNull(unit);
+        final long periodMillis = unit.toMillis(period);
+        checkArgument(periodMillis >= 1, "period has to be at least 1 millisecond");
+        return new FsyncPolicy(periodMillis);
+    }
+
+    public boolean isNever() {
+        return periodMillis < 0;
+    }
+
+    /**
+     * @param lastSyncMillis time of previous force or {@link Long#MIN_VALUE} if there was none
+     * @param nowMillis current time
+     * @return true if write should be forced now
+     */
+    boolean shouldSync(long lastSyncMillis, long nowMillis) {
+        if (periodMillis < 0) {
+            return false;
+        }
+        return periodMillis == 0
+                || lastSyncMillis == Long.MIN_VALUE
+                || nowMillis - lastSyncMillis >= periodMillis;
+    }
+
+    @Override
+    public String toString() {
+        if (periodMillis < 0) {
+            return "FsyncPolicy{never}";
+        }
+        if (periodMillis == 0) {
+            return "FsyncPolicy{always}";
+        }
+        return "FsyncPolicy{periodMillis=" + periodMillis + "}";
+    }
+}
@@ -0,0 +1,736 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import com.appunite.rx.subjects.CacheSubject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+
+import static com.appunite.rx.internal.Preconditions.checkArgument;
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * Key value store kept in single append-only file.
+ *
+ * <p>Every write appends record to the end of journal file and updates in-memory index, so
+ * small writes are cheap and do not rewrite other values. Removal appends tombstone record.
+ * When journal contains much more obsolete records than live ones it's compacted on
+ * background scheduler.</p>
+ *
+ * <p>Total size of live records is bounded, when it's exceeded the least recently used
+ * values are removed.</p>
+ *
+ * <p>Large values can be read through memory mapped buffer, see
+ * {@link #getBuffer(String)}. Records are never modified after they are written, so mapped
+ * buffer stays valid even if value is replaced or journal is compacted.</p>
+ *
+ * <p>Appended records are forced to storage device according to {@link FsyncPolicy}. Even
+ * without forcing, records torn by crash are detected by checksum and dropped.</p>
+ *
+ * <p>Journal is opened lazily on first operation, so store can be created on any thread.
+ * Records that were not fully written (i.e. process was killed during write) are dropped
+ * when journal is opened.</p>
+ *
+ * <p>Class is thread safe</p>
+ */
+public class JournalStore implements Closeable {
+
+    private static final int MAGIC = 0x4a524e4c;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    /**
+     * key length, value length and checksum
+     */
+    private static final int RECORD_OVERHEAD = 12;
+    private static final int REMOVED = -1;
+    static final long MIN_COMPACTION_SIZE = 512 * 1024;
+    /**
+     * Mapping has its own cost, so smaller values are copied to heap
+     */
+    static final int MIN_MAPPED_SIZE = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Nonnull
+    private final File file;
+    @Nonnull
+    private final File tempFile;
+    private final long maxSize;
+    @Nonnull
+    private final FsyncPolicy fsyncPolicy;
+    @Nonnull
+    private final Scheduler compactionScheduler;
+
+    private final Object lock = new Object();
+    /**
+     * Guarded by {@link #lock}
+     */
+    @Nonnull
+    private final LinkedHashMap<String, Record> index = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Guarded by {@link #lock}
+     */
+    @Nullable
+    private RandomAccessFile journal;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private long journalLength;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private long size;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private boolean closed;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private boolean compactionScheduled;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private long lastSyncMillis = Long.MIN_VALUE;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private boolean compacting;
+
+    /**
+     * Create store
+     *
+     * @param file journal file, created if does not exist
+     * @param maxSize maximum size in bytes of live records
+     * @param compactionScheduler scheduler for compaction, usually {@link rx.schedulers.Schedulers#io()}
+     */
+    public JournalStore(@Nonnull File file, long maxSize, @Nonnull Scheduler compactionScheduler) {
+        this(file, maxSize, FsyncPolicy.never(), compactionScheduler);
+    }
+
+    /**
+     * Create store
+     *
+     * @param file journal file, created if does not exist
+     * @param maxSize maximum size in bytes of live records
+     * @param fsyncPolicy when appended records are forced to storage device
+     * @param compactionScheduler scheduler for compaction, usually {@link rx.schedulers.Schedulers#io()},
+     *                            it's also a clock for {@link FsyncPolicy#periodic(long, java.util.concurrent.TimeUnit)}
+     */
+    public JournalStore(@Nonnull File file,
+                        long maxSize,
+                        @Nonnull FsyncPolicy fsyncPolicy,
+                        @Nonnull Scheduler compactionScheduler) {
+        checkArgument(maxSize >= 0, "maxSize can not be negative");
+        this.file = checkNotNull(file);
+        this.tempFile = new File(file.getPath() + ".tmp");
+        this.maxSize = maxSize;
+        this.fsyncPolicy = checkNotNull(fsyncPolicy);
+        this.compactionScheduler = checkNotNull(compactionScheduler);
+    }
+
+    /**
+     * Return cache that keeps value for given key in this store
+     *
+     * <p>Errors are not propagated, if value can not be read cache returns null, if value
+     * can not be written it's removed</p>
+     *
+     * <p>If serializer is {@link BufferSerializer} large values are decoded directly from
+     * memory mapped journal</p>
+     *
+     * @param key key of value
+     * @param serializer serializer of value
+     * @param <T> type of value
+     * @return cache
+     */
+    @Nonnull
+    public <T> CacheSubject.CacheCreator<T> cacheCreator(@Nonnull final String key,
+                                                         @Nonnull final Serializer<T> serializer) {
+        checkNotNull(key);
+        checkNotNull(serializer);
+        return new CacheSubject.CacheCreator<T>() {
+            @Nullable
+            @Override
+            public T readFromCache() {
+                try {
+                    if (serializer instanceof BufferSerializer) {
+                        final ByteBuffer data = getBuffer(key);
+                        return data == null ? null : ((BufferSerializer<T>) serializer).deserialize(data);
+                    }
+                    final byte[] data = get(key);
+                    return data == null ? null : serializer.deserialize(data);
+                } catch (IOException ignore) {
+                    return null;
+                }
+            }
+
+            @Override
+            public void writeToCache(@Nullable T data) {
+                try {
+                    if (data == null) {
+                        remove(key);
+                    } else {
+                        put(key, serializer.serialize(data));
+                    }
+                } catch (IOException ignore) {
+                    try {
+                        remove(key);
+                    } catch (IOException ignoreToo) {
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @param key key of value
+     * @return value or null if there is no value for given key
+     * @throws IOException when journal can not be read
+     */
+    @Nullable
+    public byte[] get(@Nonnull String key) throws IOException {
+        checkNotNull(key);
+        synchronized (lock) {
+            final RandomAccessFile journal = open();
+            final Record record = index.get(key);
+            if (record == null) {
+                return null;
+            }
+            final byte[] value = new byte[record.valueLength];
+            journal.seek(record.valueOffset);
+            journal.readFully(value);
+            return value;
+        }
+    }
+
+    /**
+     * Return value as buffer. Large values are memory mapped read only, so reading the buffer
+     * loads only pages that are actually read. Smaller values are copied to heap.
+     *
+     * @param key key of value
+     * @return value or null if there is no value for given key
+     * @throws IOException when journal can not be read
+     */
+    @Nullable
+    public ByteBuffer getBuffer(@Nonnull String key) throws IOException {
+        checkNotNull(key);
+        synchronized (lock) {
+            final RandomAccessFile journal = open();
+            final Record record = index.get(key);
+            if (record == null) {
+                return null;
+            }
+            if (record.valueLength < MIN_MAPPED_SIZE) {
+                final byte[] value = new byte[record.valueLength];
+                journal.seek(record.valueOffset);
+                journal.readFully(value);
+                return ByteBuffer.wrap(value);
+            }
+            return journal.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    record.valueOffset, record.valueLength);
+        }
+    }
+
+    /**
+     * @param key key of value
+     * @param value new value
+     * @throws IOException when journal can not be written
+     */
+    public void put(@Nonnull String key, @Nonnull byte[] value) throws IOException {
+        checkNotNull(key);
+        checkNotNull(value);
+        synchronized (lock) {
+            final RandomAccessFile journal = open();
+            final byte[] keyBytes = key.getBytes(UTF_8);
+            final long recordOffset = journalLength;
+            append(journal, keyBytes, value);
+            removeFromIndex(key);
+            final Record record = new Record(recordOffset + 8 + keyBytes.length, value.length,
+                    RECORD_OVERHEAD + keyBytes.length + value.length);
+            index.put(key, record);
+            size += record.size;
+            evict(journal);
+            sync(journal);
+            scheduleCompactionIfNeeded();
+        }
+    }
+
+    /**
+     * @param key key of value to remove
+     * @throws IOException when journal can not be written
+     */
+    public void remove(@Nonnull String key) throws IOException {
+        checkNotNull(key);
+        synchronized (lock) {
+            final RandomAccessFile journal = open();
+            if (!index.containsKey(key)) {
+                return;
+            }
+            append(journal, key.getBytes(UTF_8), null);
+            removeFromIndex(key);
+            sync(journal);
+            scheduleCompactionIfNeeded();
+        }
+    }
+
+    /**
+     * @return size in bytes of live records
+     */
+    public long size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    /**
+     * Rewrite journal so it contains only live records
+     *
+     * <p>Live records are copied to new journal without holding the lock, so reads and writes
+     * are not blocked while it's written and forced to storage device. Records appended in
+     * the meantime are copied under the lock just before new journal replaces the old one.</p>
+     *
+     * @throws IOException when journal can not be rewritten
+     */
+    public void compact() throws IOException {
+        final Compaction compaction = startCompaction();
+        if (compaction == null) {
+            return;
+        }
+        try {
+            compaction.write();
+            finishCompaction(compaction);
+        } finally {
+            compaction.close();
+        }
+    }
+
+    /**
+     * Snapshot live records
+     *
+     * @return compaction or null if other compaction is in progress
+     */
+    @Nullable
+    Compaction startCompaction() throws IOException {
+        synchronized (lock) {
+            compactionScheduled = false;
+            if (compacting) {
+                return null;
+            }
+            open();
+            final Compaction compaction = new Compaction(index, journalLength);
+            compacting = true;
+            return compaction;
+        }
+    }
+
+    /**
+     * Copy records appended since snapshot and replace journal
+     */
+    void finishCompaction(@Nonnull Compaction compaction) throws IOException {
+        synchronized (lock) {
+            final RandomAccessFile journal = open();
+            final long tailLength = journalLength - compaction.snapshotLength;
+            compaction.appendTail(journal, tailLength);
+
+            journal.close();
+            this.journal = null;
+            if (!tempFile.renameTo(file)) {
+                // some file systems do not replace existing files on rename
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Can not replace " + file);
+                }
+            }
+            this.journal = new RandomAccessFile(file, "rw");
+            this.journalLength = compaction.length + tailLength;
+            // records appended since snapshot are moved with the tail
+            for (Record record : index.values()) {
+                if (record.valueOffset >= compaction.snapshotLength) {
+                    record.valueOffset += compaction.length - compaction.snapshotLength;
+                }
+            }
+            for (int i = 0; i < compaction.records.length; i++) {
+                compaction.records[i].valueOffset = compaction.offsets[i];
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            index.clear();
+            size = 0;
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    @Nonnull
+    private RandomAccessFile open() throws IOException {
+        if (closed) {
+            throw new IOException("Store is closed");
+        }
+        if (journal != null) {
+            return journal;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        tempFile.delete();
+        final RandomAccessFile opened = new RandomAccessFile(file, "rw");
+        index.clear();
+        size = 0;
+        try {
+            final long validLength = replay();
+            if (validLength < HEADER_SIZE) {
+                index.clear();
+                size = 0;
+                opened.setLength(0);
+                final ByteArrayOutputStream header = new ByteArrayOutputStream(HEADER_SIZE);
+                writeHeader(new DataOutputStream(header));
+                opened.write(header.toByteArray());
+                journalLength = HEADER_SIZE;
+            } else {
+                if (validLength != opened.length()) {
+                    opened.setLength(validLength);
+                }
+                journalLength = validLength;
+            }
+        } catch (IOException e) {
+            index.clear();
+            size = 0;
+            opened.close();
+            throw e;
+        }
+        journal = opened;
+        evict(opened);
+        return opened;
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     *
+     * @return length of valid part of journal
+     */
+    private long replay() throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        final long fileLength = file.length();
+        final DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        long position = 0;
+        try {
+            if (fileLength < HEADER_SIZE || input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return 0;
+            }
+            position = HEADER_SIZE;
+            final CRC32 crc = new CRC32();
+            while (true) {
+                final long remaining = fileLength - position;
+                if (remaining < RECORD_OVERHEAD) {
+                    return position;
+                }
+                final int keyLength = input.readInt();
+                if (keyLength < 0 || keyLength > remaining - RECORD_OVERHEAD) {
+                    return position;
+                }
+                final byte[] keyBytes = new byte[keyLength];
+                input.readFully(keyBytes);
+                final int valueLength = input.readInt();
+                final int storedLength = valueLength == REMOVED ? 0 : valueLength;
+                if (valueLength < REMOVED || storedLength > remaining - RECORD_OVERHEAD - keyLength) {
+                    return position;
+                }
+                final byte[] value = new byte[storedLength];
+                input.readFully(value);
+                crc.reset();
+                crc.update(keyBytes);
+                crc.update(value);
+                if (input.readInt() != (int) crc.getValue()) {
+                    return position;
+                }
+
+                final String key = new String(keyBytes, UTF_8);
+                removeFromIndex(key);
+                if (valueLength != REMOVED) {
+                    final Record record = new Record(position + 8 + keyLength, valueLength,
+                            RECORD_OVERHEAD + keyLength + valueLength);
+                    index.put(key, record);
+                    size += record.size;
+                }
+                position += RECORD_OVERHEAD + keyLength + storedLength;
+            }
+        } catch (EOFException e) {
+            return position;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private void append(@Nonnull RandomAccessFile journal,
+                        @Nonnull byte[] keyBytes,
+                        @Nullable byte[] value) throws IOException {
+        final byte[] record = encodeRecord(keyBytes, value);
+        try {
+            journal.seek(journalLength);
+            journal.write(record);
+        } catch (IOException e) {
+            // do not leave partial record that would hide next records
+            try {
+                journal.setLength(journalLength);
+            } catch (IOException ignore) {
+            }
+            throw e;
+        }
+        journalLength += record.length;
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private void sync(@Nonnull RandomAccessFile journal) throws IOException {
+        final long now = compactionScheduler.now();
+        if (fsyncPolicy.shouldSync(lastSyncMillis, now)) {
+            journal.getChannel().force(false);
+            lastSyncMillis = now;
+        }
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private void evict(@Nonnull RandomAccessFile journal) throws IOException {
+        final Iterator<Map.Entry<String, Record>> iterator = index.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final Map.Entry<String, Record> eldest = iterator.next();
+            append(journal, eldest.getKey().getBytes(UTF_8), null);
+            iterator.remove();
+            size -= eldest.getValue().size;
+        }
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private void removeFromIndex(@Nonnull String key) {
+        final Record removed = index.remove(key);
+        if (removed != null) {
+            size -= removed.size;
+        }
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private void scheduleCompactionIfNeeded() {
+        if (compactionScheduled
+                || compacting
+                || journalLength < MIN_COMPACTION_SIZE
+                || journalLength - HEADER_SIZE < 2 * size) {
+            return;
+        }
+        compactionScheduled = true;
+        final Scheduler.Worker worker = compactionScheduler.createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    compact();
+                } catch (IOException ignore) {
+                } finally {
+                    worker.unsubscribe();
+                }
+            }
+        });
+    }
+
+    @Nonnull
+    private static byte[] encodeRecord(@Nonnull byte[] keyBytes, @Nullable byte[] value) throws IOException {
+        final int valueLength = value == null ? 0 : value.length;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                RECORD_OVERHEAD + keyBytes.length + valueLength);
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(keyBytes.length);
+        output.write(keyBytes);
+        output.writeInt(value == null ? REMOVED : value.length);
+        final CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        if (value != null) {
+            output.write(value);
+            crc.update(value);
+        }
+        output.writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    private static void writeHeader(@Nonnull DataOutputStream output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+    }
+
+    /**
+     * Copy of live records written to temporary file
+     */
+    class Compaction implements Closeable {
+        @Nonnull
+        final String[] keys;
+        @Nonnull
+        final Record[] records;
+        /**
+         * New offsets of values of {@link #records}
+         */
+        @Nonnull
+        final long[] offsets;
+        /**
+         * Length of journal when records were snapshot
+         */
+        final long snapshotLength;
+        /**
+         * Reads old journal without moving position of shared file
+         */
+        @Nonnull
+        private final RandomAccessFile source;
+        /**
+         * Length of new journal without tail
+         */
+        long length = HEADER_SIZE;
+
+        /**
+         * Guarded by {@link #lock}
+         */
+        Compaction(@Nonnull Map<String, Record> index, long snapshotLength) throws IOException {
+            this.keys = index.keySet().toArray(new String[index.size()]);
+            this.records = index.values().toArray(new Record[index.size()]);
+            this.offsets = new long[records.length];
+            this.snapshotLength = snapshotLength;
+            this.source = new RandomAccessFile(file, "r");
+        }
+
+        void write() throws IOException {
+            final FileOutputStream fileOutput = new FileOutputStream(tempFile);
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+            try {
+                writeHeader(output);
+                for (int i = 0; i < records.length; i++) {
+                    final Record record = records[i];
+                    final byte[] keyBytes = keys[i].getBytes(UTF_8);
+                    final byte[] value = new byte[record.valueLength];
+                    source.seek(record.valueOffset);
+                    source.readFully(value);
+                    output.write(encodeRecord(keyBytes, value));
+                    offsets[i] = length + 8 + keyBytes.length;
+                    length += record.size;
+                }
+                output.flush();
+                if (!fsyncPolicy.isNever()) {
+                    // compacted journal replaces the old one, so it can not be torn
+                    fileOutput.getChannel().force(true);
+                }
+            } finally {
+                output.close();
+            }
+        }
+
+        /**
+         * Guarded by {@link #lock}
+         */
+        void appendTail(@Nonnull RandomAccessFile journal, long tailLength) throws IOException {
+            if (tailLength == 0) {
+                return;
+            }
+            final RandomAccessFile target = new RandomAccessFile(tempFile, "rw");
+            try {
+                final byte[] buffer = new byte[(int) Math.min(tailLength, 64 * 1024)];
+                journal.seek(snapshotLength);
+                target.seek(length);
+                long remaining = tailLength;
+                while (remaining > 0) {
+                    final int read = (int) Math.min(remaining, buffer.length);
+                    journal.readFully(buffer, 0, read);
+                    target.write(buffer, 0, read);
+                    remaining -= read;
+                }
+                if (!fsyncPolicy.isNever()) {
+                    target.getChannel().force(true);
+                }
+            } finally {
+                target.close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                source.close();
+            } finally {
+                // left only if compaction failed
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+                synchronized (lock) {
+                    compacting = false;
+                }
+            }
+        }
+    }
+
+    private static class Record {
+        long valueOffset;
+        final int valueLength;
+        /**
+         * Size of whole record in journal
+         */
+        final long size;
+
+        Record(long valueOffset, int valueLength, long size) {
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.size = size;
+        }
+    }
+}
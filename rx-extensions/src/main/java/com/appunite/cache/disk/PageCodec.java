@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Codec of value that consists of list of items, where new items are usually appended to the
+ * end, i.e. paginated response
+ *
+ * @param <T> type of value
+ * @param <I> type of item
+ * @see PagedCacheCreator
+ */
+public interface PageCodec<T, I> {
+
+    /**
+     * @param value value
+     * @return items of value
+     */
+    @Nonnull
+    List<I> items(@Nonnull T value);
+
+    /**
+     * Encode everything except items, i.e. title or next page token
+     */
+    void encodeHeader(@Nonnull T value, @Nonnull BinaryWriter writer) throws IOException;
+
+    void encodeItem(@Nonnull I item, @Nonnull BinaryWriter writer) throws IOException;
+
+    @Nonnull
+    I decodeItem(@Nonnull BinaryReader reader) throws IOException;
+
+    /**
+     * @param headerReader reader of data written by {@link #encodeHeader(Object, BinaryWriter)}
+     * @param items decoded items
+     * @return value
+     */
+    @Nonnull
+    T decode(@Nonnull BinaryReader headerReader, @Nonnull List<I> items) throws IOException;
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import com.appunite.rx.subjects.CacheSubject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * {@link CacheSubject.CacheCreator} that stores value in {@link JournalStore} as list of pages.
+ *
+ * <p>If new value contains all items of previously written value followed by new items, only
+ * new items are written as next page together with small header record. So writing paginated
+ * list page by page costs linear number of bytes instead of quadratic. Otherwise whole value
+ * is written again as single page.</p>
+ *
+ * <p>Header record is written after pages and points to them, so value is always consistent
+ * even if process is killed during write. If any page was evicted from store whole value is
+ * treated as missing.</p>
+ *
+ * <p>Class is thread safe</p>
+ *
+ * @param <T> type of value
+ * @param <I> type of items
+ */
+public class PagedCacheCreator<T, I> implements CacheSubject.CacheCreator<T> {
+
+    @Nonnull
+    private final JournalStore store;
+    @Nonnull
+    private final String key;
+    @Nonnull
+    private final PageCodec<T, I> codec;
+
+    /**
+     * Items that are stored, null if unknown. Guarded by this
+     */
+    @Nullable
+    private List<I> storedItems;
+    /**
+     * True if {@link #generation} and {@link #pages} are known. Guarded by this
+     */
+    private boolean headerRead;
+    /**
+     * Pages of every full write have new generation, so they never overwrite pages that are
+     * still pointed by header. Guarded by this
+     */
+    private long generation;
+    /**
+     * Guarded by this
+     */
+    private int pages;
+
+    public PagedCacheCreator(@Nonnull JournalStore store,
+                             @Nonnull String key,
+                             @Nonnull PageCodec<T, I> codec) {
+        this.store = checkNotNull(store);
+        this.key = checkNotNull(key);
+        this.codec = checkNotNull(codec);
+    }
+
+    @Nullable
+    @Override
+    public synchronized T readFromCache() {
+        try {
+            return read();
+        } catch (IOException ignore) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void writeToCache(@Nullable T data) {
+        try {
+            if (data == null) {
+                removeAll();
+            } else {
+                write(data);
+            }
+        } catch (IOException ignore) {
+            storedItems = null;
+            headerRead = false;
+            try {
+                removeAll();
+            } catch (IOException ignoreToo) {
+            }
+        }
+    }
+
+    @Nullable
+    private T read() throws IOException {
+        storedItems = null;
+        final BinaryReader headerReader = readHeader();
+        if (headerReader == null) {
+            return null;
+        }
+        final List<I> items = new ArrayList<>();
+        for (int page = 0; page < pages; page++) {
+            // large pages are memory mapped, so they are decoded without copying to heap
+            final ByteBuffer pageData = store.getBuffer(pageKey(generation, page));
+            if (pageData == null) {
+                throw new IOException("Missing page " + page);
+            }
+            final BinaryReader pageReader = new BinaryReader(pageData);
+            final int count = pageReader.readInt();
+            for (int i = 0; i < count; i++) {
+                items.add(codec.decodeItem(pageReader));
+            }
+        }
+        final T value = codec.decode(new BinaryReader(headerReader.readByteBuffer()), items);
+        storedItems = codec.items(value);
+        return value;
+    }
+
+    /**
+     * Read generation and number of pages
+     *
+     * @return reader positioned at encoded value header or null if there is no value
+     */
+    @Nullable
+    private BinaryReader readHeader() throws IOException {
+        final ByteBuffer headerData = store.getBuffer(headerKey());
+        if (headerData == null) {
+            pages = 0;
+            headerRead = true;
+            return null;
+        }
+        final BinaryReader headerReader = new BinaryReader(headerData);
+        generation = headerReader.readVarint();
+        pages = headerReader.readInt();
+        headerRead = true;
+        return headerReader;
+    }
+
+    private void write(@Nonnull T data) throws IOException {
+        if (!headerRead) {
+            readHeader();
+        }
+        final List<I> items = codec.items(data);
+        final List<I> stored = storedItems;
+        if (stored != null && items.size() >= stored.size() && startsWith(items, stored)) {
+            if (items.size() > stored.size()) {
+                writePage(generation, pages, items.subList(stored.size(), items.size()));
+                pages += 1;
+            }
+            writeHeader(data);
+        } else {
+            final long oldGeneration = generation;
+            final int oldPages = pages;
+            generation += 1;
+            writePage(generation, 0, items);
+            pages = 1;
+            writeHeader(data);
+            removePages(oldGeneration, oldPages);
+        }
+        storedItems = items;
+    }
+
+    private void removeAll() throws IOException {
+        if (!headerRead) {
+            readHeader();
+        }
+        store.remove(headerKey());
+        removePages(generation, pages);
+        storedItems = null;
+        pages = 0;
+    }
+
+    private void writePage(long generation, int page, @Nonnull List<I> items) throws IOException {
+        final BinaryWriter writer = new BinaryWriter();
+        writer.writeVarint(items.size());
+        for (I item : items) {
+            codec.encodeItem(item, writer);
+        }
+        store.put(pageKey(generation, page), writer.toByteArray());
+    }
+
+    private void writeHeader(@Nonnull T data) throws IOException {
+        final BinaryWriter valueWriter = new BinaryWriter();
+        codec.encodeHeader(data, valueWriter);
+        final BinaryWriter writer = new BinaryWriter();
+        writer.writeVarint(generation);
+        writer.writeVarint(pages);
+        writer.writeBytes(valueWriter.toByteArray());
+        store.put(headerKey(), writer.toByteArray());
+    }
+
+    private void removePages(long generation, int pages) throws IOException {
+        for (int page = 0; page < pages; page++) {
+            store.remove(pageKey(generation, page));
+        }
+    }
+
+    @Nonnull
+    private String headerKey() {
+        return key + "/pages";
+    }
+
+    @Nonnull
+    private String pageKey(long generation, int page) {
+        return key + "/pages/" + generation + "/" + page;
+    }
+
+    private static <I> boolean startsWith(@Nonnull List<I> items, @Nonnull List<I> prefix) {
+        for (int i = 0; i < prefix.size(); i++) {
+            final I item = items.get(i);
+            final I prefixItem = prefix.get(i);
+            if (item != prefixItem && (item == null || !item.equals(prefixItem))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
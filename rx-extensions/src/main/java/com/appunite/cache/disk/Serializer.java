@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Converts values to bytes and back so they can be persisted
+ *
+ * @param <T> type of value
+ */
+public interface Serializer<T> {
+
+    /**
+     * @param value value to convert
+     * @return bytes representing value
+     * @throws IOException when value can not be converted
+     */
+    @Nonnull
+    byte[] serialize(@Nonnull T value) throws IOException;
+
+    /**
+     * @param data bytes returned previously by {@link #serialize(Object)}
+     * @return value
+     * @throws IOException when data is corrupted
+     */
+    @Nonnull
+    T deserialize(@Nonnull byte[] data) throws IOException;
+}
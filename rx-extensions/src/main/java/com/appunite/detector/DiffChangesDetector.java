@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.detector;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * Replacement for {@link ChangesDetector} that computes changes with {@link ListDiffer}.
+ *
+ * <p>{@link ChangesDetector} compares every new item with old items one by one, so it's
+ * quadratic and gets slow for long lists. This detector indexes old items by
+ * {@link ListDiffer.Detector#matchesHashCode(Object)} and reports changes to the same
+ * {@link ChangesDetector.ChangesAdapter}.</p>
+ *
+ * <p>Class is not thread safe</p>
+ *
+ * @param <T> type of list items
+ * @param <H> type of items that are compared
+ */
+public class DiffChangesDetector<T, H> {
+
+    @Nonnull
+    private final ListDiffer<T, H> differ;
+    @Nonnull
+    private List<H> items = Collections.emptyList();
+
+    public DiffChangesDetector(@Nonnull ListDiffer.Detector<T, H> detector) {
+        differ = new ListDiffer<>(detector);
+    }
+
+    /**
+     * Inform adapter about new data
+     * @param adapter adapter to be informed about changes
+     * @param values items for adapter
+     * @param force true if you need to force all data reload
+     */
+    public void newData(@Nonnull ChangesDetector.ChangesAdapter adapter,
+                        @Nonnull List<T> values,
+                        boolean force) {
+        checkNotNull(adapter);
+        final List<H> newItems = differ.apply(values);
+        final DiffResult result = differ.diff(items, newItems, force);
+        items = newItems;
+        result.dispatchTo(adapter);
+    }
+}
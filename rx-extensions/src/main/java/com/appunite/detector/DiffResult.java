@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.detector;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * Changes between two lists recorded as {@link ChangesDetector.ChangesAdapter} calls.
+ *
+ * <p>Result is immutable, so it can be computed on background thread and dispatched to
+ * adapter on UI thread. Positions of every operation are valid after all previous
+ * operations were applied, so operations have to be dispatched in order and to adapter
+ * that contains old list.</p>
+ *
+ * <p>Class is thread safe</p>
+ */
+public final class DiffResult {
+
+    private static final int INSERTED = 0;
+    private static final int REMOVED = 1;
+    private static final int MOVED = 2;
+    private static final int CHANGED = 3;
+    private static final int OPERATION_SIZE = 3;
+
+    @Nonnull
+    private static final DiffResult EMPTY = new DiffResult(new int[0]);
+
+    /**
+     * Triples of operation type and two arguments
+     */
+    @Nonnull
+    private final int[] operations;
+
+    private DiffResult(@Nonnull int[] operations) {
+        this.operations = operations;
+    }
+
+    /**
+     * @return result without any changes
+     */
+    @Nonnull
+    public static DiffResult empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Apply recorded changes to adapter
+     *
+     * @param adapter adapter that contains old list
+     */
+    public void dispatchTo(@Nonnull ChangesDetector.ChangesAdapter adapter) {
+        checkNotNull(adapter);
+        for (int i = 0; i < operations.length; i += OPERATION_SIZE) {
+            final int first = operations[i + 1];
+            final int second = operations[i + 2];
+            switch (operations[i]) {
+                case INSERTED:
+                    adapter.notifyItemRangeInserted(first, second);
+                    break;
+                case REMOVED:
+                    adapter.notifyItemRangeRemoved(first, second);
+                    break;
+                case MOVED:
+                    adapter.notifyItemMoved(first, second);
+                    break;
+                case CHANGED:
+                    adapter.notifyItemRangeChanged(first, second);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation: " + operations[i]);
+            }
+        }
+    }
+
+    /**
+     * @return number of adapter calls
+     */
+    public int operationsCount() {
+        return operations.length / OPERATION_SIZE;
+    }
+
+    public boolean isEmpty() {
+        return operations.length == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DiffResult)) return false;
+        final DiffResult that = (DiffResult) o;
+        return Arrays.equals(operations, that.operations);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(operations);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("DiffResult{");
+        for (int i = 0; i < operations.length; i += OPERATION_SIZE) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            switch (operations[i]) {
+                case INSERTED:
+                    builder.append("inserted(");
+                    break;
+                case REMOVED:
+                    builder.append("removed(");
+                    break;
+                case MOVED:
+                    builder.append("moved(");
+                    break;
+                default:
+                    builder.append("changed(");
+                    break;
+            }
+            builder.append(operations[i + 1]).append(", ").append(operations[i + 2]).append(')');
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Class is not thread safe
+     */
+    static class Builder {
+        private final int offset;
+        @Nonnull
+        private int[] operations = new int[OPERATION_SIZE * 4];
+        private int length;
+
+        Builder() {
+            this(0);
+        }
+
+        /**
+         * @param offset added to all positions, used when changes are computed for sublist
+         */
+        Builder(int offset) {
+            this.offset = offset;
+        }
+
+        @Nonnull
+        Builder inserted(int start, int count) {
+            return add(INSERTED, offset + start, count);
+        }
+
+        @Nonnull
+        Builder removed(int start, int count) {
+            return add(REMOVED, offset + start, count);
+        }
+
+        @Nonnull
+        Builder moved(int fromPosition, int toPosition) {
+            return add(MOVED, offset + fromPosition, offset + toPosition);
+        }
+
+        @Nonnull
+        Builder changed(int start, int count) {
+            return add(CHANGED, offset + start, count);
+        }
+
+        @Nonnull
+        DiffResult build() {
+            return length == 0 ? EMPTY : new DiffResult(Arrays.copyOf(operations, length));
+        }
+
+        @Nonnull
+        private Builder add(int operation, int first, int second) {
+            if (length + OPERATION_SIZE > operations.length) {
+                operations = Arrays.copyOf(operations, operations.length * 2);
+            }
+            operations[length++] = operation;
+            operations[length++] = first;
+            operations[length++] = second;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.detector;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * List together with changes from previous list, emitted by
+ * {@link ListDiffer#transformer(rx.Scheduler)}
+ *
+ * <p>Class is immutable</p>
+ *
+ * @param <T> type of list items
+ */
+public final class DiffedList<T> {
+
+    @Nonnull
+    private final List<T> items;
+    @Nonnull
+    private final DiffResult diffResult;
+
+    public DiffedList(@Nonnull List<T> items, @Nonnull DiffResult diffResult) {
+        this.items = checkNotNull(items);
+        this.diffResult = checkNotNull(diffResult);
+    }
+
+    /**
+     * @return new list
+     */
+    @Nonnull
+    public List<T> items() {
+        return items;
+    }
+
+    /**
+     * @return changes from previous list to {@link #items()}
+     */
+    @Nonnull
+    public DiffResult diffResult() {
+        return diffResult;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DiffedList)) return false;
+        final DiffedList<?> that = (DiffedList<?>) o;
+        return items.equals(that.items) && diffResult.equals(that.diffResult);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * items.hashCode() + diffResult.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "DiffedList{" +
+                "items=" + items +
+                ", diffResult=" + diffResult +
+                '}';
+    }
+}
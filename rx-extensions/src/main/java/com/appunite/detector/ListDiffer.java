@@ -0,0 +1,648 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.detector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.annotation.Nonnull;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * Computes changes between two lists in O(n log n) time.
+ *
+ * <p>Old items are indexed in hash table by {@link Detector#matchesHashCode(Object)}, so
+ * every new item finds its old counterpart in constant time, like in Heckel's algorithm.
+ * {@link Detector#matches(Object, Object)} is called only for items with equal hash codes.
+ * If many items matches the same item, they are paired in order. If items have long ids
+ * use {@link IdDetector}, then old items are indexed by id in primitive table.</p>
+ *
+ * <p>Unchanged items at the beginning and at the end of list are skipped before indexing,
+ * so when page is appended to list, only single inserted range is reported. Items are
+ * compared there by reference first, so detector is not called for the same instances.</p>
+ *
+ * <p>Changes are reported in order: removed ranges, moves, inserted ranges and changed
+ * ranges, see {@link DiffResult}. Number of moves is minimal, items that stay in the same
+ * relative order are never moved.</p>
+ *
+ * <p>Class is thread safe if detector is thread safe</p>
+ *
+ * @param <T> type of list items
+ * @param <H> type of items that are compared
+ */
+public class ListDiffer<T, H> {
+
+    private static final int NONE = -1;
+    /**
+     * Slot of id table with all items already matched
+     */
+    private static final int EXHAUSTED = -2;
+
+    /**
+     * Compares items of lists
+     *
+     * @param <T> type of list items
+     * @param <H> type of items that are compared
+     */
+    public interface Detector<T, H> {
+
+        @Nonnull
+        H apply(@Nonnull T item);
+
+        /**
+         * Hash code of item identity, items that {@link #matches(Object, Object)} need to
+         * return the same value
+         *
+         * <p>Usually it's hash code of item id</p>
+         *
+         * @param item item
+         * @return hash code
+         */
+        int matchesHashCode(@Nonnull H item);
+
+        /**
+         * @param item old item
+         * @param newOne new item
+         * @return true if both items represents the same element, even with different content
+         */
+        boolean matches(@Nonnull H item, @Nonnull H newOne);
+
+        /**
+         * @param item old item
+         * @param newOne new item
+         * @return true if both items have exactly the same content
+         */
+        boolean same(@Nonnull H item, @Nonnull H newOne);
+    }
+
+    /**
+     * Detector of items with long ids
+     *
+     * <p>Old items are indexed by id in primitive hash table, so items are not compared with
+     * items that have different id. Ids do not need to be unique, every pair with the same id is
+     * still confirmed by {@link #matches(Object, Object)}.</p>
+     *
+     * @param <T> type of list items
+     * @param <H> type of items that are compared
+     */
+    public interface IdDetector<T, H> extends Detector<T, H> {
+
+        /**
+         * Id of item identity, items that {@link #matches(Object, Object)} need to return
+         * the same value
+         *
+         * @param item item
+         * @return id of item
+         */
+        long matchesId(@Nonnull H item);
+    }
+
+    @Nonnull
+    private final Detector<T, H> detector;
+
+    public ListDiffer(@Nonnull Detector<T, H> detector) {
+        this.detector = checkNotNull(detector);
+    }
+
+    /**
+     * @param values list items
+     * @return immutable list of items that can be compared
+     */
+    @Nonnull
+    public List<H> apply(@Nonnull List<T> values) {
+        checkNotNull(values);
+        final List<H> result = new ArrayList<>(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            result.add(detector.apply(values.get(i)));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Compute changes between lists
+     *
+     * @param oldItems items that are in adapter
+     * @param newItems items that will be in adapter
+     * @param force true if all items that stay in list should be reported as changed
+     * @return changes that transform old list to new list
+     */
+    @Nonnull
+    public DiffResult diff(@Nonnull List<H> oldItems, @Nonnull List<H> newItems, boolean force) {
+        checkNotNull(oldItems);
+        checkNotNull(newItems);
+        // unchanged head and tail are skipped, so appending page to long list costs only
+        // cheap comparisons of old items and inserting new ones
+        int prefix = 0;
+        int suffix = 0;
+        if (!force) {
+            final int minSize = Math.min(oldItems.size(), newItems.size());
+            while (prefix < minSize && unchanged(oldItems.get(prefix), newItems.get(prefix))) {
+                prefix += 1;
+            }
+            while (suffix < minSize - prefix && unchanged(oldItems.get(oldItems.size() - 1 - suffix),
+                    newItems.get(newItems.size() - 1 - suffix))) {
+                suffix += 1;
+            }
+        }
+        final DiffResult.Builder builder = new DiffResult.Builder(prefix);
+        final List<H> oldMiddle = oldItems.subList(prefix, oldItems.size() - suffix);
+        final List<H> newMiddle = newItems.subList(prefix, newItems.size() - suffix);
+        if (oldMiddle.isEmpty() || newMiddle.isEmpty()) {
+            if (!oldMiddle.isEmpty()) {
+                builder.removed(0, oldMiddle.size());
+            }
+            if (!newMiddle.isEmpty()) {
+                builder.inserted(0, newMiddle.size());
+            }
+            return builder.build();
+        }
+        diff(builder, oldMiddle, newMiddle, force);
+        return builder.build();
+    }
+
+    private void diff(@Nonnull DiffResult.Builder builder,
+                      @Nonnull List<H> oldItems,
+                      @Nonnull List<H> newItems,
+                      boolean force) {
+        final int oldSize = oldItems.size();
+        final int newSize = newItems.size();
+        final int[] newToOld = match(oldItems, newItems);
+        final int[] oldToNew = new int[oldSize];
+        for (int i = 0; i < oldSize; i++) {
+            oldToNew[i] = NONE;
+        }
+        for (int j = 0; j < newSize; j++) {
+            if (newToOld[j] != NONE) {
+                oldToNew[newToOld[j]] = j;
+            }
+        }
+
+        removeRanges(builder, oldToNew);
+        move(builder, oldToNew, newToOld);
+        insertRanges(builder, newToOld);
+        changeRanges(builder, oldItems, newItems, newToOld, force);
+    }
+
+    /**
+     * The same instance is treated as unchanged without asking detector
+     */
+    private boolean unchanged(@Nonnull H item, @Nonnull H newOne) {
+        return item == newOne || (detector.matches(item, newOne) && detector.same(item, newOne));
+    }
+
+    /**
+     * Compute changes between consecutive lists on background scheduler
+     *
+     * <p>Every emitted {@link DiffedList} contains changes from previously emitted list, so
+     * subscriber on UI thread only dispatches them to adapter, see
+     * {@link DiffResult#dispatchTo(ChangesDetector.ChangesAdapter)}. First list is compared
+     * with empty list.</p>
+     *
+     * <p>If new list arrives while changes for previous one are still computed, previous
+     * computation is unsubscribed and its result is never emitted.</p>
+     *
+     * @param diffScheduler scheduler for computing changes, usually
+     *                      {@link rx.schedulers.Schedulers#computation()}
+     * @return transformer
+     */
+    @Nonnull
+    public Observable.Transformer<List<T>, DiffedList<T>> transformer(@Nonnull final Scheduler diffScheduler) {
+        checkNotNull(diffScheduler);
+        return new Observable.Transformer<List<T>, DiffedList<T>>() {
+            @Override
+            public Observable<DiffedList<T>> call(final Observable<List<T>> lists) {
+                return Observable.defer(new Func0<Observable<DiffedList<T>>>() {
+                    @Override
+                    public Observable<DiffedList<T>> call() {
+                        return diffConsecutive(lists, diffScheduler);
+                    }
+                });
+            }
+        };
+    }
+
+    @Nonnull
+    private Observable<DiffedList<T>> diffConsecutive(@Nonnull Observable<List<T>> lists,
+                                                      @Nonnull final Scheduler diffScheduler) {
+        final Emitted<H> emitted = new Emitted<>();
+        return lists
+                .switchMap(new Func1<List<T>, Observable<Computed<T, H>>>() {
+                    @Override
+                    public Observable<Computed<T, H>> call(final List<T> values) {
+                        return Observable
+                                .fromCallable(new Callable<Computed<T, H>>() {
+                                    @Override
+                                    public Computed<T, H> call() {
+                                        final List<H> base = emitted.items;
+                                        final List<H> items = apply(values);
+                                        return new Computed<>(values, base, items, diff(base, items, false));
+                                    }
+                                })
+                                .subscribeOn(diffScheduler);
+                    }
+                })
+                .map(new Func1<Computed<T, H>, DiffedList<T>>() {
+                    @Override
+                    public DiffedList<T> call(Computed<T, H> computed) {
+                        // emissions are serialized by switchMap, but computation could start
+                        // before previous result was emitted, then it has to be compared again
+                        final DiffResult diffResult = computed.base == emitted.items
+                                ? computed.diffResult
+                                : diff(emitted.items, computed.items, false);
+                        emitted.items = computed.items;
+                        return new DiffedList<>(computed.values, diffResult);
+                    }
+                });
+    }
+
+    /**
+     * @return for every new item index of matching old item or {@link #NONE}
+     */
+    @Nonnull
+    private int[] match(@Nonnull List<H> oldItems, @Nonnull List<H> newItems) {
+        if (detector instanceof IdDetector) {
+            return matchByIds((IdDetector<T, H>) detector, oldItems, newItems);
+        }
+        final int oldSize = oldItems.size();
+        final int newSize = newItems.size();
+        final int[] newToOld = new int[newSize];
+
+        // open hash table of old items, every bucket is a list chained through next array,
+        // buckets contain old indexes in ascending order
+        final int mask = tableSize(oldSize) - 1;
+        final int[] heads = new int[mask + 1];
+        final int[] next = new int[oldSize];
+        final int[] hashes = new int[oldSize];
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = NONE;
+        }
+        for (int i = oldSize - 1; i >= 0; i--) {
+            final int hash = detector.matchesHashCode(oldItems.get(i));
+            final int bucket = spread(hash) & mask;
+            hashes[i] = hash;
+            next[i] = heads[bucket];
+            heads[bucket] = i;
+        }
+
+        for (int j = 0; j < newSize; j++) {
+            final H newItem = newItems.get(j);
+            final int hash = detector.matchesHashCode(newItem);
+            final int bucket = spread(hash) & mask;
+            newToOld[j] = NONE;
+            int previous = NONE;
+            for (int i = heads[bucket]; i != NONE; previous = i, i = next[i]) {
+                if (hashes[i] == hash && detector.matches(oldItems.get(i), newItem)) {
+                    // matched item is unlinked, so it's never visited again
+                    if (previous == NONE) {
+                        heads[bucket] = next[i];
+                    } else {
+                        next[previous] = next[i];
+                    }
+                    newToOld[j] = i;
+                    break;
+                }
+            }
+        }
+        return newToOld;
+    }
+
+    /**
+     * @return for every new item index of matching old item or {@link #NONE}
+     */
+    @Nonnull
+    private int[] matchByIds(@Nonnull IdDetector<T, H> idDetector,
+                             @Nonnull List<H> oldItems,
+                             @Nonnull List<H> newItems) {
+        final int oldSize = oldItems.size();
+        final int newSize = newItems.size();
+        final int[] newToOld = new int[newSize];
+
+        // open addressing table from id to list of old items with that id chained through
+        // next array, ids are kept in primitive array, so nothing is boxed or allocated per item
+        final int mask = tableSize(oldSize) - 1;
+        final long[] ids = new long[mask + 1];
+        final int[] heads = new int[mask + 1];
+        final int[] next = new int[oldSize];
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = NONE;
+        }
+        for (int i = oldSize - 1; i >= 0; i--) {
+            final long id = idDetector.matchesId(oldItems.get(i));
+            final int slot = slot(ids, heads, mask, id);
+            ids[slot] = id;
+            next[i] = heads[slot];
+            heads[slot] = i;
+        }
+
+        for (int j = 0; j < newSize; j++) {
+            final H newItem = newItems.get(j);
+            final int slot = slot(ids, heads, mask, idDetector.matchesId(newItem));
+            newToOld[j] = NONE;
+            final int head = heads[slot];
+            if (head < 0) {
+                // there is no old item with this id, or all of them were already matched
+                continue;
+            }
+            // ids may collide, so items with the same id are still confirmed by detector
+            int previous = NONE;
+            for (int i = head; i != NONE; previous = i, i = next[i]) {
+                if (idDetector.matches(oldItems.get(i), newItem)) {
+                    if (previous == NONE) {
+                        // slot can not become free, because probing would stop on it
+                        heads[slot] = next[i] == NONE ? EXHAUSTED : next[i];
+                    } else {
+                        next[previous] = next[i];
+                    }
+                    newToOld[j] = i;
+                    break;
+                }
+            }
+        }
+        return newToOld;
+    }
+
+    /**
+     * @return slot of id or free slot where id should be placed
+     */
+    private static int slot(@Nonnull long[] ids, @Nonnull int[] heads, int mask, long id) {
+        int slot = spread((int) (id ^ (id >>> 32))) & mask;
+        while (heads[slot] != NONE && ids[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Ranges are removed from the end of list, so positions of items before them do not change
+     */
+    private static void removeRanges(@Nonnull DiffResult.Builder builder, @Nonnull int[] oldToNew) {
+        int i = oldToNew.length - 1;
+        while (i >= 0) {
+            if (oldToNew[i] != NONE) {
+                i -= 1;
+                continue;
+            }
+            final int end = i;
+            while (i >= 0 && oldToNew[i] == NONE) {
+                i -= 1;
+            }
+            builder.removed(i + 1, end - i);
+        }
+    }
+
+    /**
+     * After removals adapter contains items that stay, in old order. The longest increasing
+     * subsequence of their new positions stays in place, so the minimal number of items is
+     * moved. Moved items are placed in new order, every one right after its new predecessor.
+     */
+    private static void move(@Nonnull DiffResult.Builder builder,
+                             @Nonnull int[] oldToNew,
+                             @Nonnull int[] newToOld) {
+        // for every position after removals, rank of item in new order
+        final int[] ranks = new int[oldToNew.length];
+        final int[] oldToPosition = new int[oldToNew.length];
+        int count = 0;
+        for (int i = 0; i < oldToNew.length; i++) {
+            if (oldToNew[i] != NONE) {
+                oldToPosition[i] = count++;
+            }
+        }
+        // position of item with given rank
+        final int[] positions = new int[count];
+        int rank = 0;
+        for (int oldIndex : newToOld) {
+            if (oldIndex != NONE) {
+                ranks[oldToPosition[oldIndex]] = rank;
+                positions[rank] = oldToPosition[oldIndex];
+                rank += 1;
+            }
+        }
+
+        final boolean[] stays = longestIncreasingSubsequence(ranks, count);
+        // rank of the first staying item after position, or count
+        final int[] nextStayingRank = new int[count];
+        int next = count;
+        for (int position = count - 1; position >= 0; position--) {
+            nextStayingRank[position] = next;
+            if (stays[position]) {
+                next = ranks[position];
+            }
+        }
+        // position of the last staying item with lower rank, or NONE
+        final int[] previousStayingPosition = new int[count];
+        int previous = NONE;
+        for (int r = 0; r < count; r++) {
+            previousStayingPosition[r] = previous;
+            if (stays[positions[r]]) {
+                previous = positions[r];
+            }
+        }
+
+        // items already in new order are kept by rank, items still waiting to be moved are
+        // kept by position, waiting items keep their place relative to staying items
+        final FenwickTree ordered = new FenwickTree(count);
+        final FenwickTree waiting = new FenwickTree(count);
+        for (int position = 0; position < count; position++) {
+            if (stays[position]) {
+                ordered.add(ranks[position], 1);
+            } else {
+                waiting.add(position, 1);
+            }
+        }
+
+        for (int r = 0; r < count; r++) {
+            final int position = positions[r];
+            if (stays[position]) {
+                continue;
+            }
+            // ordered items with lower rank than next staying item are before item
+            final int from = ordered.sum(nextStayingRank[position]) + waiting.sum(position);
+            waiting.add(position, -1);
+            // item goes right after its predecessor, that follows the previous staying item
+            final int previousPosition = previousStayingPosition[r];
+            final int to = ordered.sum(r) + (previousPosition == NONE ? 0 : waiting.sum(previousPosition));
+            ordered.add(r, 1);
+            if (from != to) {
+                builder.moved(from, to);
+            }
+        }
+    }
+
+    /**
+     * Longest increasing subsequence, from all longest subsequences the one with the earliest
+     * items is chosen, so items are rather moved to front
+     *
+     * @param values distinct values
+     * @param count number of values
+     * @return true for values that belong to subsequence
+     */
+    @Nonnull
+    private static boolean[] longestIncreasingSubsequence(@Nonnull int[] values, int count) {
+        // length of the longest increasing subsequence that starts with value
+        final int[] lengths = new int[count];
+        // tails[i] is the highest first value of increasing subsequence of length i + 1
+        final int[] tails = new int[count];
+        int longest = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            final int value = values[i];
+            // tails are decreasing, find first that is not higher than value
+            int low = 0;
+            int high = longest;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (tails[middle] > value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            tails[low] = value;
+            lengths[i] = low + 1;
+            if (low == longest) {
+                longest += 1;
+            }
+        }
+
+        final boolean[] result = new boolean[count];
+        int remaining = longest;
+        int last = Integer.MIN_VALUE;
+        for (int i = 0; i < count && remaining > 0; i++) {
+            if (lengths[i] == remaining && values[i] > last) {
+                result[i] = true;
+                last = values[i];
+                remaining -= 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moved items are already in new order, so items can be inserted at their new positions
+     */
+    private static void insertRanges(@Nonnull DiffResult.Builder builder, @Nonnull int[] newToOld) {
+        int j = 0;
+        while (j < newToOld.length) {
+            if (newToOld[j] != NONE) {
+                j += 1;
+                continue;
+            }
+            final int start = j;
+            while (j < newToOld.length && newToOld[j] == NONE) {
+                j += 1;
+            }
+            builder.inserted(start, j - start);
+        }
+    }
+
+    private void changeRanges(@Nonnull DiffResult.Builder builder,
+                              @Nonnull List<H> oldItems,
+                              @Nonnull List<H> newItems,
+                              @Nonnull int[] newToOld,
+                              boolean force) {
+        int start = NONE;
+        for (int j = 0; j <= newToOld.length; j++) {
+            final boolean changed = j < newToOld.length
+                    && newToOld[j] != NONE
+                    && (force || !detector.same(oldItems.get(newToOld[j]), newItems.get(j)));
+            if (changed && start == NONE) {
+                start = j;
+            } else if (!changed && start != NONE) {
+                builder.changed(start, j - start);
+                start = NONE;
+            }
+        }
+    }
+
+    private static int tableSize(int size) {
+        int tableSize = 1;
+        while (tableSize < size * 2) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    private static int spread(int hash) {
+        final int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Binary indexed tree of counts
+     */
+    private static class FenwickTree {
+        @Nonnull
+        private final int[] tree;
+
+        FenwickTree(int size) {
+            tree = new int[size + 1];
+        }
+
+        void add(int index, int value) {
+            for (int i = index + 1; i < tree.length; i += i & -i) {
+                tree[i] += value;
+            }
+        }
+
+        /**
+         * @return sum of values before index
+         */
+        int sum(int index) {
+            int sum = 0;
+            for (int i = index; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+    }
+
+    private static class Emitted<H> {
+        /**
+         * Items of last emitted list, written only in serialized emission
+         */
+        @Nonnull
+        volatile List<H> items = Collections.emptyList();
+    }
+
+    private static class Computed<T, H> {
+        @Nonnull
+        final List<T> values;
+        @Nonnull
+        final List<H> base;
+        @Nonnull
+        final List<H> items;
+        @Nonnull
+        final DiffResult diffResult;
+
+        Computed(@Nonnull List<T> values,
+                 @Nonnull List<H> base,
+                 @Nonnull List<H> items,
+                 @Nonnull DiffResult diffResult) {
+            this.values = values;
+            this.base = base;
+            this.items = items;
+            this.diffResult = diffResult;
+        }
+    }
+}
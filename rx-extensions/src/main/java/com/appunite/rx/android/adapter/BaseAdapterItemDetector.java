@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.android.adapter;
+
+import com.appunite.detector.ListDiffer;
+
+import javax.annotation.Nonnull;
+
+/**
+ * {@link ListDiffer.IdDetector} for {@link BaseAdapterItem}
+ *
+ * <p>Old items are indexed by {@link BaseAdapterItem#adapterId()}, and items with the same
+ * adapter id are confirmed by {@link BaseAdapterItem#matches(BaseAdapterItem)}.</p>
+ */
+public class BaseAdapterItemDetector implements ListDiffer.IdDetector<BaseAdapterItem, BaseAdapterItem> {
+
+    @Nonnull
+    @Override
+    public BaseAdapterItem apply(@Nonnull BaseAdapterItem item) {
+        return item;
+    }
+
+    @Override
+    public long matchesId(@Nonnull BaseAdapterItem item) {
+        return item.adapterId();
+    }
+
+    @Override
+    public int matchesHashCode(@Nonnull BaseAdapterItem item) {
+        final long id = item.adapterId();
+        return (int) (id ^ (id >>> 32));
+    }
+
+    @Override
+    public boolean matches(@Nonnull BaseAdapterItem item, @Nonnull BaseAdapterItem newOne) {
+        return item.matches(newOne);
+    }
+
+    @Override
+    public boolean same(@Nonnull BaseAdapterItem item, @Nonnull BaseAdapterItem newOne) {
+        return item.same(newOne);
+    }
+}
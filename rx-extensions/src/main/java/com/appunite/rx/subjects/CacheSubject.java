@@ -16,28 +16,42 @@
 
 package com.appunite.rx.subjects;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import rx.Observable;
+import rx.Producer;
+import rx.Scheduler;
 import rx.Subscriber;
 import rx.functions.Action0;
 import rx.functions.Func0;
+import rx.internal.operators.BackpressureUtils;
 import rx.internal.operators.OperatorMulticast;
 import rx.observables.ConnectableObservable;
 import rx.subjects.Subject;
 import rx.subscriptions.Subscriptions;
 
+import static com.appunite.rx.internal.Preconditions.checkArgument;
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
 public class CacheSubject<T> extends Subject<T, T> {
 
     @Nonnull
     private final CacheCreator<T> cacheCreator;
 
+    private static final Subscriber<?>[] EMPTY = new Subscriber<?>[0];
+
+    /**
+     * Immutable array of subscribers, it's replaced on every add and remove so emission
+     * do not need any lock
+     */
     @Nonnull
-    private final List<Subscriber<? super T>> subscribers = new ArrayList<>();
+    private final AtomicReference<Subscriber<? super T>[]> subscribers =
+            new AtomicReference<>(CacheSubject.<T>subscribersArray(0));
     private final boolean skipNextNull;
 
     @Nonnull
@@ -52,7 +66,80 @@ public class CacheSubject<T> extends Subject<T, T> {
 
     @Nonnull
     public static <T> CacheSubject<T> create(@Nonnull CacheCreator<T> cacheCreator, final boolean skipFirstNull, final boolean skipNextNull) {
-        return new CacheSubject<>(cacheCreator, new DelegateOnSubscribe<T>(), skipFirstNull, skipNextNull);
+        return new CacheSubject<>(cacheCreator, new DelegateOnSubscribe<T>(), skipFirstNull, skipNextNull, false);
+    }
+
+    /**
+     * Same as {@link #create(CacheCreator)} but subject respects backpressure
+     *
+     * <p>Every subscriber receives values only when requested. If subscriber is slower than
+     * producer only the newest value is kept for it and older ones are dropped, so slow
+     * subscribers never cause {@link rx.exceptions.MissingBackpressureException} nor buffer
+     * values.</p>
+     *
+     * @param cacheCreator cache
+     * @param <T> type of data
+     * @return subject
+     */
+    @Nonnull
+    public static <T> CacheSubject<T> createLatest(@Nonnull CacheCreator<T> cacheCreator) {
+        return new CacheSubject<>(cacheCreator, new DelegateOnSubscribe<T>(), true, true, true);
+    }
+
+    /**
+     * Same as {@link #create(CacheCreator, Scheduler)} but subject respects backpressure
+     *
+     * @see #createLatest(CacheCreator)
+     */
+    @Nonnull
+    public static <T> CacheSubject<T> createLatest(@Nonnull CacheCreator<T> cacheCreator,
+                                                   @Nonnull Scheduler readScheduler) {
+        return new CacheSubject<>(memoized(cacheCreator), new DelegateOnSubscribe<T>(),
+                true, true, checkNotNull(readScheduler), true);
+    }
+
+    /**
+     * Create subject that reads cache on given scheduler
+     *
+     * <p>Cache is read only once, next subscribers get value from memory immediately.
+     * Subscriber gets value from cache and then new values. If new value comes before cache
+     * is read, value from cache is not emitted because it's older.</p>
+     *
+     * @param cacheCreator cache
+     * @param readScheduler scheduler for reading cache, usually {@link rx.schedulers.Schedulers#io()}
+     * @param <T> type of data
+     * @return subject
+     */
+    @Nonnull
+    public static <T> CacheSubject<T> create(@Nonnull CacheCreator<T> cacheCreator,
+                                             @Nonnull Scheduler readScheduler) {
+        return create(cacheCreator, readScheduler, true, true);
+    }
+
+    /**
+     * Same as {@link #create(CacheCreator, Scheduler)}
+     *
+     * @param cacheCreator cache
+     * @param readScheduler scheduler for reading cache
+     * @param skipFirstNull do not emit null read from cache
+     * @param skipNextNull do not emit null values passed to {@link #onNext(Object)}
+     * @param <T> type of data
+     * @return subject
+     */
+    @Nonnull
+    public static <T> CacheSubject<T> create(@Nonnull CacheCreator<T> cacheCreator,
+                                             @Nonnull Scheduler readScheduler,
+                                             final boolean skipFirstNull,
+                                             final boolean skipNextNull) {
+        return new CacheSubject<>(memoized(cacheCreator), new DelegateOnSubscribe<T>(),
+                skipFirstNull, skipNextNull, checkNotNull(readScheduler), false);
+    }
+
+    @Nonnull
+    private static <T> MemoizedCacheCreator<T> memoized(@Nonnull CacheCreator<T> cacheCreator) {
+        return cacheCreator instanceof MemoizedCacheCreator
+                ? (MemoizedCacheCreator<T>) cacheCreator
+                : new MemoizedCacheCreator<>(cacheCreator);
     }
 
     @Nonnull
@@ -67,6 +154,48 @@ public class CacheSubject<T> extends Subject<T, T> {
         });
     }
 
+    /**
+     * Same as {@link #behavior(Observable, CacheCreator)} but cache is read on given scheduler
+     * and only once for all subscriptions
+     *
+     * @see #create(CacheCreator, Scheduler)
+     */
+    @Nonnull
+    public static <T> ConnectableObservable<T> behavior(final @Nonnull Observable<T> observable,
+                                                        final @Nonnull CacheSubject.CacheCreator<T> cacheCreator,
+                                                        final @Nonnull Scheduler readScheduler) {
+        return behavior(observable, memoized(cacheCreator), readScheduler, false);
+    }
+
+    /**
+     * Same as {@link #behavior(Observable, CacheCreator, Scheduler)} but subject respects
+     * backpressure
+     *
+     * @see #createLatest(CacheCreator)
+     */
+    @Nonnull
+    public static <T> ConnectableObservable<T> behaviorLatest(final @Nonnull Observable<T> observable,
+                                                              final @Nonnull CacheSubject.CacheCreator<T> cacheCreator,
+                                                              final @Nonnull Scheduler readScheduler) {
+        return behavior(observable, memoized(cacheCreator), readScheduler, true);
+    }
+
+    @Nonnull
+    private static <T> ConnectableObservable<T> behavior(final @Nonnull Observable<T> observable,
+                                                         final @Nonnull MemoizedCacheCreator<T> memoized,
+                                                         final @Nonnull Scheduler readScheduler,
+                                                         final boolean latest) {
+        return new OperatorMulticast<>(observable, new Func0<Subject<? super T, ? extends T>>() {
+
+            @Override
+            public Subject<? super T, ? extends T> call() {
+                return latest
+                        ? CacheSubject.createLatest(memoized, readScheduler)
+                        : CacheSubject.create(memoized, readScheduler);
+            }
+        });
+    }
+
     @Nonnull
     public static <T> Observable.Transformer<T, T> behaviorRefCount(
             final @Nonnull CacheSubject.CacheCreator<T> cacheCreator) {
@@ -78,78 +207,197 @@ public class CacheSubject<T> extends Subject<T, T> {
         };
     }
 
+    /**
+     * Same as {@link #behaviorRefCount(CacheCreator)} but cache is read on given scheduler
+     * and only once for all subscriptions
+     *
+     * @see #create(CacheCreator, Scheduler)
+     */
+    @Nonnull
+    public static <T> Observable.Transformer<T, T> behaviorRefCount(
+            final @Nonnull CacheSubject.CacheCreator<T> cacheCreator,
+            final @Nonnull Scheduler readScheduler) {
+        final MemoizedCacheCreator<T> memoized = memoized(cacheCreator);
+        return new Observable.Transformer<T, T>() {
+            @Override
+            public Observable<T> call(final Observable<T> tObservable) {
+                return behavior(tObservable, memoized, readScheduler, false).refCount();
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #behaviorRefCount(CacheCreator, Scheduler)} but subject respects
+     * backpressure
+     *
+     * @see #createLatest(CacheCreator)
+     */
+    @Nonnull
+    public static <T> Observable.Transformer<T, T> behaviorLatestRefCount(
+            final @Nonnull CacheSubject.CacheCreator<T> cacheCreator,
+            final @Nonnull Scheduler readScheduler) {
+        final MemoizedCacheCreator<T> memoized = memoized(cacheCreator);
+        return new Observable.Transformer<T, T>() {
+            @Override
+            public Observable<T> call(final Observable<T> tObservable) {
+                return behavior(tObservable, memoized, readScheduler, true).refCount();
+            }
+        };
+    }
+
     private CacheSubject(@Nonnull final CacheCreator<T> cacheCreator,
                          @Nonnull DelegateOnSubscribe<T> delegateOnSubscribe,
                          final boolean skipFirstNull,
-                         final boolean skipNextNull) {
+                         final boolean skipNextNull,
+                         final boolean latest) {
         super(delegateOnSubscribe);
         this.skipNextNull = skipNextNull;
         delegateOnSubscribe.setDelegate(new OnSubscribe<T>() {
             @Override
             public void call(final Subscriber<? super T> child) {
+                final Subscriber<? super T> subscriber = wrap(child, latest);
                 final T t = cacheCreator.readFromCache();
                 if (!skipFirstNull || t != null) {
-                    child.onNext(t);
+                    subscriber.onNext(t);
                 }
-                add(child);
-                child.add(Subscriptions.create(new Action0() {
+                addAndRemoveOnUnsubscribe(child, subscriber);
+            }
+        });
+        this.cacheCreator = cacheCreator;
+    }
+
+    private CacheSubject(@Nonnull final MemoizedCacheCreator<T> cacheCreator,
+                         @Nonnull DelegateOnSubscribe<T> delegateOnSubscribe,
+                         final boolean skipFirstNull,
+                         final boolean skipNextNull,
+                         @Nonnull final Scheduler readScheduler,
+                         final boolean latest) {
+        super(delegateOnSubscribe);
+        this.skipNextNull = skipNextNull;
+        delegateOnSubscribe.setDelegate(new OnSubscribe<T>() {
+            @Override
+            public void call(final Subscriber<? super T> child) {
+                final Subscriber<? super T> target = wrap(child, latest);
+                if (cacheCreator.isLoaded()) {
+                    final T t = cacheCreator.readFromCache();
+                    if (!skipFirstNull || t != null) {
+                        target.onNext(t);
+                    }
+                    addAndRemoveOnUnsubscribe(child, target);
+                    return;
+                }
+
+                final InitialValueSubscriber<T> subscriber = new InitialValueSubscriber<>(target, skipFirstNull);
+                addAndRemoveOnUnsubscribe(child, subscriber);
+                final Scheduler.Worker worker = readScheduler.createWorker();
+                child.add(worker);
+                worker.schedule(new Action0() {
                     @Override
                     public void call() {
-                        remove(child);
+                        try {
+                            subscriber.onInitialValue(cacheCreator.readFromCache());
+                        } finally {
+                            worker.unsubscribe();
+                        }
                     }
-                }));
+                });
             }
         });
         this.cacheCreator = cacheCreator;
     }
 
-    private void add(Subscriber<? super T> child) {
-        synchronized (subscribers) {
-            subscribers.add(child);
+    @Nonnull
+    private static <T> Subscriber<? super T> wrap(@Nonnull Subscriber<? super T> child, boolean latest) {
+        if (latest) {
+            return LatestSubscriber.create(child);
+        }
+        return child;
+    }
+
+    private void addAndRemoveOnUnsubscribe(@Nonnull Subscriber<?> child,
+                                           @Nonnull final Subscriber<? super T> subscriber) {
+        add(subscriber);
+        child.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                remove(subscriber);
+            }
+        }));
+    }
+
+    private void add(@Nonnull Subscriber<? super T> child) {
+        while (true) {
+            final Subscriber<? super T>[] current = subscribers.get();
+            final int length = current.length;
+            final Subscriber<? super T>[] next = subscribersArray(length + 1);
+            System.arraycopy(current, 0, next, 0, length);
+            next[length] = child;
+            if (subscribers.compareAndSet(current, next)) {
+                return;
+            }
         }
     }
 
-    private void remove(Subscriber<? super T> child) {
-        synchronized (subscribers) {
-            subscribers.remove(child);
+    private void remove(@Nonnull Subscriber<? super T> child) {
+        while (true) {
+            final Subscriber<? super T>[] current = subscribers.get();
+            final int length = current.length;
+            int index = -1;
+            for (int i = 0; i < length; i++) {
+                if (current[i] == child) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+            final Subscriber<? super T>[] next;
+            if (length == 1) {
+                next = subscribersArray(0);
+            } else {
+                next = subscribersArray(length - 1);
+                System.arraycopy(current, 0, next, 0, index);
+                System.arraycopy(current, index + 1, next, index, length - index - 1);
+            }
+            if (subscribers.compareAndSet(current, next)) {
+                return;
+            }
         }
     }
 
+    /**
+     * Arrays never leave this class and contain only subscribers of T, so cast is safe
+     */
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    private static <T> Subscriber<? super T>[] subscribersArray(int length) {
+        return (Subscriber<? super T>[]) (length == 0 ? EMPTY : new Subscriber<?>[length]);
+    }
+
     @Override
     public boolean hasObservers() {
-        return !getSubscribers().isEmpty();
+        return subscribers.get().length != 0;
     }
 
     @Override
     public void onCompleted() {
-        final List<Subscriber<? super T>> subscribers = getSubscribers();
-        for (Subscriber<? super T> subscriber : subscribers) {
+        for (Subscriber<? super T> subscriber : subscribers.get()) {
             subscriber.onCompleted();
         }
     }
 
     @Override
     public void onError(Throwable e) {
-        final List<Subscriber<? super T>> subscribers = getSubscribers();
-        for (Subscriber<? super T> subscriber : subscribers) {
+        for (Subscriber<? super T> subscriber : subscribers.get()) {
             subscriber.onError(e);
         }
     }
 
-    /*
-     * This is very dump solution not efficient but is straight forward so it is cool
-     */
-    private List<Subscriber<? super T>> getSubscribers() {
-        synchronized (subscribers) {
-            return new ArrayList<>(subscribers);
-        }
-    }
-
     @Override
     public void onNext(T t) {
         if (!skipNextNull || t != null) {
-            final List<Subscriber<? super T>> subscribers = getSubscribers();
-            for (Subscriber<? super T> subscriber : subscribers) {
+            for (Subscriber<? super T> subscriber : subscribers.get()) {
                 subscriber.onNext(t);
             }
         }
@@ -185,6 +433,154 @@ public class CacheSubject<T> extends Subject<T, T> {
         }
     }
 
+    /**
+     * Emits value read from cache unless new value was already emitted
+     */
+    private static class InitialValueSubscriber<T> extends Subscriber<T> {
+        @Nonnull
+        private final Subscriber<? super T> child;
+        private final boolean skipFirstNull;
+        /**
+         * Guarded by this
+         */
+        private boolean emitted;
+
+        InitialValueSubscriber(@Nonnull Subscriber<? super T> child, boolean skipFirstNull) {
+            super(child);
+            this.child = child;
+            this.skipFirstNull = skipFirstNull;
+        }
+
+        synchronized void onInitialValue(@Nullable T t) {
+            if (emitted) {
+                return;
+            }
+            emitted = true;
+            if (!skipFirstNull || t != null) {
+                child.onNext(t);
+            }
+        }
+
+        @Override
+        public synchronized void onNext(T t) {
+            emitted = true;
+            child.onNext(t);
+        }
+
+        @Override
+        public synchronized void onError(Throwable e) {
+            emitted = true;
+            child.onError(e);
+        }
+
+        @Override
+        public synchronized void onCompleted() {
+            emitted = true;
+            child.onCompleted();
+        }
+    }
+
+    /**
+     * Passes values to child only when requested, keeps only the newest not requested value
+     */
+    private static class LatestSubscriber<T> extends Subscriber<T> {
+        private static final Object NONE = new Object();
+        private static final Object NULL = new Object();
+
+        @Nonnull
+        private final Subscriber<? super T> child;
+        @Nonnull
+        private final AtomicLong requested = new AtomicLong();
+        @Nonnull
+        private final AtomicReference<Object> latest = new AtomicReference<>(NONE);
+        @Nonnull
+        private final AtomicInteger wip = new AtomicInteger();
+        @Nullable
+        private volatile Throwable error;
+        private volatile boolean done;
+        private boolean terminated;
+
+        @Nonnull
+        static <T> LatestSubscriber<T> create(@Nonnull Subscriber<? super T> child) {
+            final LatestSubscriber<T> subscriber = new LatestSubscriber<>(child);
+            child.setProducer(new Producer() {
+                @Override
+                public void request(long n) {
+                    subscriber.requested(n);
+                }
+            });
+            return subscriber;
+        }
+
+        private LatestSubscriber(@Nonnull Subscriber<? super T> child) {
+            super(child);
+            this.child = child;
+        }
+
+        void requested(long n) {
+            checkArgument(n >= 0, "n can not be negative");
+            if (n > 0) {
+                BackpressureUtils.getAndAddRequest(requested, n);
+                drain();
+            }
+        }
+
+        @Override
+        public void onNext(T t) {
+            latest.set(t == null ? NULL : t);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error = e;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onCompleted() {
+            done = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (terminated || child.isUnsubscribed()) {
+                    return;
+                }
+                final Throwable e = error;
+                if (e != null) {
+                    terminated = true;
+                    latest.set(NONE);
+                    child.onError(e);
+                    return;
+                }
+                if (requested.get() > 0) {
+                    final Object value = latest.getAndSet(NONE);
+                    if (value != NONE) {
+                        if (requested.get() != Long.MAX_VALUE) {
+                            requested.decrementAndGet();
+                        }
+                        @SuppressWarnings("unchecked")
+                        final T t = value == NULL ? null : (T) value;
+                        child.onNext(t);
+                    }
+                }
+                if (done && latest.get() == NONE) {
+                    terminated = true;
+                    child.onCompleted();
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
     private static class DelegateOnSubscribe<T> implements OnSubscribe<T> {
 
         private OnSubscribe<T> delegate = null;
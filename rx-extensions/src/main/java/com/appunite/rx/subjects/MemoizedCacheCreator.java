@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.subjects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * {@link CacheSubject.CacheCreator} that reads other cache creator only once and keeps
+ * the value in memory.
+ *
+ * <p>Writes update memory and are passed to the other cache creator. It's useful when
+ * reading is expensive, i.e. reading from disk</p>
+ *
+ * @param <T> type of cached data
+ */
+public class MemoizedCacheCreator<T> implements CacheSubject.CacheCreator<T> {
+
+    @Nonnull
+    private final CacheSubject.CacheCreator<T> cacheCreator;
+    private final Object lock = new Object();
+    /**
+     * Guarded by {@link #lock}
+     */
+    private boolean loaded;
+    /**
+     * Guarded by {@link #lock}
+     */
+    @Nullable
+    private T memory;
+
+    public MemoizedCacheCreator(@Nonnull CacheSubject.CacheCreator<T> cacheCreator) {
+        this.cacheCreator = checkNotNull(cacheCreator);
+    }
+
+    /**
+     * @return true if {@link #readFromCache()} will return value from memory
+     */
+    public boolean isLoaded() {
+        synchronized (lock) {
+            return loaded;
+        }
+    }
+
+    @Nullable
+    @Override
+    public T readFromCache() {
+        synchronized (lock) {
+            if (loaded) {
+                return memory;
+            }
+        }
+        final T data = cacheCreator.readFromCache();
+        synchronized (lock) {
+            // value written during reading is newer so keep it
+            if (!loaded) {
+                memory = data;
+                loaded = true;
+            }
+            return memory;
+        }
+    }
+
+    @Override
+    public void writeToCache(@Nullable T data) {
+        synchronized (lock) {
+            memory = data;
+            loaded = true;
+        }
+        cacheCreator.writeToCache(data);
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.subjects;
+
+import com.appunite.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import rx.Scheduler;
+
+import static com.appunite.rx.internal.Preconditions.checkArgument;
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * Two level cache: memory tier backed by persistent tier (i.e. disk).
+ *
+ * <p>{@link CacheSubject.CacheCreator} returned by {@link #cacheCreator(String, CacheSubject.CacheCreator)}
+ * reads memory first and falls back to persistent tier. Value read from persistent tier is
+ * promoted to memory so next reads do not deserialize it again. Writes go to memory
+ * synchronously and to persistent tier in background.</p>
+ *
+ * <p>Every tier has its own budget. When memory budget is exceeded the least recently used
+ * values are dropped from memory. When persistent budget is exceeded the least recently
+ * used values are removed from persistent tier. Persistent budget counts only values that
+ * were read or written by this instance.</p>
+ *
+ * <p>Class is thread safe</p>
+ */
+public class TieredCache {
+
+    @Nonnull
+    private final Cache.Weigher<String, Object> weigher;
+    @Nonnull
+    private final Scheduler writeScheduler;
+    private final long memoryBudget;
+    private final long persistentBudget;
+
+    private final Object lock = new Object();
+    /**
+     * Guarded by {@link #lock}
+     */
+    @Nonnull
+    private final Map<String, WriteBehindCacheCreator<?>> persistent = new HashMap<>();
+    /**
+     * Guarded by {@link #lock}
+     */
+    @Nonnull
+    private final LinkedHashMap<String, MemoryEntry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Guarded by {@link #lock}
+     */
+    @Nonnull
+    private final LinkedHashMap<String, Integer> persisted = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Guarded by {@link #lock}
+     */
+    private long memoryWeight;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private long persistedWeight;
+
+    /**
+     * Create tiered cache where every value weights 1
+     *
+     * @param maximumMemoryEntries number of values kept in memory
+     * @param maximumPersistentEntries number of values kept in persistent tier
+     * @param writeScheduler scheduler for writes to persistent tier, usually {@link rx.schedulers.Schedulers#io()}
+     */
+    public TieredCache(long maximumMemoryEntries,
+                       long maximumPersistentEntries,
+                       @Nonnull Scheduler writeScheduler) {
+        this(maximumMemoryEntries, maximumPersistentEntries, new Cache.Weigher<String, Object>() {
+            @Override
+            public int weigh(@Nonnull String key, @Nonnull Object value) {
+                return 1;
+            }
+        }, writeScheduler);
+    }
+
+    /**
+     * Create tiered cache
+     *
+     * @param memoryBudget maximum weight of values kept in memory
+     * @param persistentBudget maximum weight of values kept in persistent tier
+     * @param weigher weight of value, i.e. estimated size in bytes
+     * @param writeScheduler scheduler for writes to persistent tier, usually {@link rx.schedulers.Schedulers#io()}
+     */
+    public TieredCache(long memoryBudget,
+                       long persistentBudget,
+                       @Nonnull Cache.Weigher<String, Object> weigher,
+                       @Nonnull Scheduler writeScheduler) {
+        checkArgument(memoryBudget >= 0, "memoryBudget can not be negative");
+        checkArgument(persistentBudget >= 0, "persistentBudget can not be negative");
+        this.memoryBudget = memoryBudget;
+        this.persistentBudget = persistentBudget;
+        this.weigher = checkNotNull(weigher);
+        this.writeScheduler = checkNotNull(writeScheduler);
+    }
+
+    /**
+     * Return cache for given key
+     *
+     * <p>Calling this method again with the same key returns cache that shares memory and
+     * persistent tier with the first one, second persistentCacheCreator is ignored.</p>
+     *
+     * @param key unique key of value
+     * @param persistentCacheCreator persistent tier for this key
+     * @param <T> type of value
+     * @return cache for given key
+     */
+    @Nonnull
+    public <T> CacheSubject.CacheCreator<T> cacheCreator(@Nonnull final String key,
+                                                         @Nonnull CacheSubject.CacheCreator<T> persistentCacheCreator) {
+        checkNotNull(key);
+        checkNotNull(persistentCacheCreator);
+        final WriteBehindCacheCreator<T> writeBehind;
+        synchronized (lock) {
+            @SuppressWarnings("unchecked")
+            final WriteBehindCacheCreator<T> existing = (WriteBehindCacheCreator<T>) persistent.get(key);
+            if (existing == null) {
+                writeBehind = new WriteBehindCacheCreator<>(persistentCacheCreator, writeScheduler);
+                persistent.put(key, writeBehind);
+            } else {
+                writeBehind = existing;
+            }
+        }
+        return new CacheSubject.CacheCreator<T>() {
+            @Nullable
+            @Override
+            public T readFromCache() {
+                return read(key, writeBehind);
+            }
+
+            @Override
+            public void writeToCache(@Nullable T data) {
+                write(key, writeBehind, data);
+            }
+        };
+    }
+
+    /**
+     * Write all pending values to persistent tier
+     */
+    public void flush() {
+        final List<WriteBehindCacheCreator<?>> caches;
+        synchronized (lock) {
+            caches = new ArrayList<>(persistent.values());
+        }
+        for (WriteBehindCacheCreator<?> cache : caches) {
+            cache.flush();
+        }
+    }
+
+    /**
+     * @return weight of values kept in memory
+     */
+    public long memoryWeight() {
+        synchronized (lock) {
+            return memoryWeight;
+        }
+    }
+
+    /**
+     * @return weight of values kept in persistent tier
+     */
+    public long persistentWeight() {
+        synchronized (lock) {
+            return persistedWeight;
+        }
+    }
+
+    @Nullable
+    private <T> T read(@Nonnull String key, @Nonnull WriteBehindCacheCreator<T> writeBehind) {
+        synchronized (lock) {
+            final MemoryEntry entry = memory.get(key);
+            if (entry != null) {
+                // mark value as recently used in persistent tier too
+                persisted.get(key);
+                @SuppressWarnings("unchecked")
+                final T value = (T) entry.value;
+                return value;
+            }
+        }
+        final T value = writeBehind.readFromCache();
+        if (value == null) {
+            return null;
+        }
+        final int weight = weigh(key, value);
+        synchronized (lock) {
+            final MemoryEntry entry = memory.get(key);
+            if (entry != null) {
+                // value was written during reading so it's newer
+                @SuppressWarnings("unchecked")
+                final T newer = (T) entry.value;
+                return newer;
+            }
+            putToMemory(key, value, weight);
+            if (!persisted.containsKey(key)) {
+                persisted.put(key, weight);
+                persistedWeight += weight;
+                evictPersisted();
+            }
+        }
+        return value;
+    }
+
+    private <T> void write(@Nonnull String key,
+                           @Nonnull WriteBehindCacheCreator<T> writeBehind,
+                           @Nullable T data) {
+        synchronized (lock) {
+            removeFromMemory(key);
+            removeFromPersisted(key);
+            if (data != null) {
+                final int weight = weigh(key, data);
+                putToMemory(key, data, weight);
+                persisted.put(key, weight);
+                persistedWeight += weight;
+            }
+            // write inside lock so eviction of this key can not overtake this write
+            writeBehind.writeToCache(data);
+            evictPersisted();
+        }
+    }
+
+    private int weigh(@Nonnull String key, @Nonnull Object value) {
+        final int weight = weigher.weigh(key, value);
+        checkArgument(weight >= 0, "weight can not be negative");
+        return weight;
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private void putToMemory(@Nonnull String key, @Nonnull Object value, int weight) {
+        if (weight > memoryBudget) {
+            return;
+        }
+        memory.put(key, new MemoryEntry(value, weight));
+        memoryWeight += weight;
+        final Iterator<MemoryEntry> iterator = memory.values().iterator();
+        while (memoryWeight > memoryBudget && iterator.hasNext()) {
+            final MemoryEntry eldest = iterator.next();
+            iterator.remove();
+            memoryWeight -= eldest.weight;
+        }
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private void removeFromMemory(@Nonnull String key) {
+        final MemoryEntry removed = memory.remove(key);
+        if (removed != null) {
+            memoryWeight -= removed.weight;
+        }
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private void removeFromPersisted(@Nonnull String key) {
+        final Integer removed = persisted.remove(key);
+        if (removed != null) {
+            persistedWeight -= removed;
+        }
+    }
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    private void evictPersisted() {
+        final Iterator<Map.Entry<String, Integer>> iterator = persisted.entrySet().iterator();
+        while (persistedWeight > persistentBudget && iterator.hasNext()) {
+            final Map.Entry<String, Integer> eldest = iterator.next();
+            iterator.remove();
+            persistedWeight -= eldest.getValue();
+            final WriteBehindCacheCreator<?> writeBehind = persistent.get(eldest.getKey());
+            if (writeBehind != null) {
+                writeBehind.writeToCache(null);
+            }
+        }
+    }
+
+    private static class MemoryEntry {
+        @Nonnull
+        final Object value;
+        final int weight;
+
+        MemoryEntry(@Nonnull Object value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.subjects;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+
+import static com.appunite.rx.internal.Preconditions.checkNotNull;
+
+/**
+ * {@link CacheSubject.CacheCreator} that writes to other cache creator in background.
+ *
+ * <p>{@link #writeToCache(Object)} returns immediately and write is executed on given
+ * scheduler. If new values come faster than they can be written only the latest one is
+ * written. {@link #readFromCache()} always returns the latest value even if it's not
+ * written yet.</p>
+ *
+ * <p>Call {@link #flush()} before your process ends (i.e. on shutdown) to be sure that
+ * the latest value is written</p>
+ *
+ * <p>If background write fails, error is not propagated to the scheduler thread. Value stays
+ * pending, so it's still read, and write is retried with exponential backoff starting
+ * from {@link #INITIAL_RETRY_DELAY_MILLIS} up to {@link #MAX_RETRY_DELAY_MILLIS}. Values
+ * written in the meantime replace the pending one and are written by the retry.
+ * {@link #flush()} can be used to write pending value immediately and get the error.</p>
+ *
+ * @param <T> type of cached data
+ */
+public class WriteBehindCacheCreator<T> implements CacheSubject.CacheCreator<T> {
+
+    static final long INITIAL_RETRY_DELAY_MILLIS = 1000L;
+    static final long MAX_RETRY_DELAY_MILLIS = 60000L;
+
+    @Nonnull
+    private final CacheSubject.CacheCreator<T> cacheCreator;
+    @Nonnull
+    private final Scheduler scheduler;
+
+    private final Object lock = new Object();
+    /**
+     * Only one write to {@link #cacheCreator} can be executed at once
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Guarded by {@link #lock}
+     */
+    @Nullable
+    private T latest;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private long version;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private long writtenVersion;
+    /**
+     * Guarded by {@link #lock}
+     */
+    private boolean scheduled;
+    /**
+     * Delay of next retry after failed background write
+     *
+     * Guarded by {@link #lock}
+     */
+    private long retryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+
+    /**
+     * Create write behind cache
+     *
+     * @param cacheCreator cache that will be written in background
+     * @param scheduler scheduler for writes, usually {@link rx.schedulers.Schedulers#io()}
+     */
+    public WriteBehindCacheCreator(@Nonnull CacheSubject.CacheCreator<T> cacheCreator,
+                                   @Nonnull Scheduler scheduler) {
+        this.cacheCreator = checkNotNull(cacheCreator);
+        this.scheduler = checkNotNull(scheduler);
+    }
+
+    @Nullable
+    @Override
+    public T readFromCache() {
+        synchronized (lock) {
+            if (writtenVersion != version) {
+                return latest;
+            }
+        }
+        return cacheCreator.readFromCache();
+    }
+
+    @Override
+    public void writeToCache(@Nullable T data) {
+        synchronized (lock) {
+            latest = data;
+            version += 1;
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        scheduleWrite(0L);
+    }
+
+    private void scheduleWrite(long delayMillis) {
+        final Scheduler.Worker worker = scheduler.createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    synchronized (lock) {
+                        scheduled = false;
+                    }
+                    flush();
+                    synchronized (lock) {
+                        retryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+                    }
+                } catch (RuntimeException e) {
+                    // do not crash scheduler thread, value that failed is still pending
+                    retryWrite();
+                } finally {
+                    worker.unsubscribe();
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void retryWrite() {
+        final long delayMillis;
+        synchronized (lock) {
+            if (scheduled) {
+                // newer write is already scheduled
+                return;
+            }
+            scheduled = true;
+            delayMillis = retryDelayMillis;
+            retryDelayMillis = Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+        }
+        scheduleWrite(delayMillis);
+    }
+
+    /**
+     * Write the latest value synchronously if it's not written yet
+     *
+     * <p>If write fails exception is thrown and value stays pending</p>
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            final T data;
+            final long dataVersion;
+            synchronized (lock) {
+                if (writtenVersion == version) {
+                    return;
+                }
+                data = latest;
+                dataVersion = version;
+            }
+            cacheCreator.writeToCache(data);
+            synchronized (lock) {
+                writtenVersion = dataVersion;
+                if (writtenVersion == version) {
+                    latest = null;
+                }
+            }
+        }
+    }
+}
@@ -21,13 +21,37 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
 import static com.google.common.truth.Truth.assert_;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class CacheTest {
 
+    private static final int GC_ATTEMPTS = 50;
+    private static final long GC_TIMEOUT_MILLIS = 100L;
+
     @Mock
     private Cache.CacheProvider<String, String> provider;
     private Cache<String, String> cache;
@@ -69,4 +93,570 @@ public class CacheTest {
         assert_().that(cache.get("key1")).isEqualTo("value1");
         assert_().that(cache.get("key2")).isEqualTo("value2");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void whenMaximumSizeIsExceeded_oldestValueIsEvicted() throws Exception {
+        final Cache<String, String> cache = Cache.builder(provider)
+                .maximumSize(2)
+                .build();
+        when(provider.load("key1")).thenReturn("value1");
+        when(provider.load("key2")).thenReturn("value2");
+        when(provider.load("key3")).thenReturn("value3");
+
+        cache.get("key1");
+        cache.get("key2");
+        cache.get("key3");
+        cache.get("key1");
+
+        assert_().that(cache.size()).isEqualTo(2);
+        verify(provider, times(2)).load("key1");
+    }
+
+    @Test
+    public void whenMaximumSizeIsExceeded_frequentlyUsedValueIsKept() throws Exception {
+        final Cache<String, String> cache = Cache.builder(provider)
+                .maximumSize(2)
+                .build();
+        when(provider.load("hot")).thenReturn("hot");
+        when(provider.load("key1")).thenReturn("value1");
+        when(provider.load("key2")).thenReturn("value2");
+        when(provider.load("key3")).thenReturn("value3");
+
+        cache.get("hot");
+        cache.get("hot");
+        cache.get("key1");
+        cache.get("key2");
+        cache.get("key3");
+        cache.get("hot");
+
+        verify(provider, times(1)).load("hot");
+    }
+
+    @Test
+    public void whenValueIsReadOnOtherThread_readIsCountedByEviction() throws Exception {
+        final Cache<String, String> cache = Cache.builder(provider)
+                .maximumSize(2)
+                .build();
+        when(provider.load("hot")).thenReturn("hot");
+        when(provider.load("key1")).thenReturn("value1");
+        when(provider.load("key2")).thenReturn("value2");
+        when(provider.load("key3")).thenReturn("value3");
+        cache.get("hot");
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cache.get("hot");
+            }
+        });
+        reader.start();
+        reader.join();
+
+        cache.get("key1");
+        cache.get("key2");
+        cache.get("key3");
+        cache.get("hot");
+
+        verify(provider, times(1)).load("hot");
+    }
+
+    @Test
+    public void whenMaximumWeightIsExceeded_valuesAreEvictedUntilWeightFits() throws Exception {
+        final Cache<String, String> cache = Cache.builder(provider)
+                .maximumWeight(10, new Cache.Weigher<String, String>() {
+                    @Override
+                    public int weigh(@Nonnull String key, @Nonnull String value) {
+                        return value.length();
+                    }
+                })
+                .build();
+        when(provider.load("key1")).thenReturn("12345");
+        when(provider.load("key2")).thenReturn("1234");
+        when(provider.load("key3")).thenReturn("123456");
+
+        cache.get("key1");
+        cache.get("key2");
+        cache.get("key3");
+
+        assert_().that(cache.size()).isEqualTo(2);
+        cache.get("key2");
+        verify(provider, times(1)).load("key2");
+    }
+
+    @Test
+    public void whenLoadingKeyIsSlow_otherKeysAreLoadedInParallel() throws Exception {
+        final CountDownLatch slowLoadStarted = new CountDownLatch(1);
+        final CountDownLatch finishSlowLoad = new CountDownLatch(1);
+        final Cache<String, String> cache = new Cache<>(new Cache.CacheProvider<String, String>() {
+            @Nonnull
+            @Override
+            public String load(@Nonnull String key) {
+                if (key.equals("slow")) {
+                    slowLoadStarted.countDown();
+                    awaitUninterruptibly(finishSlowLoad);
+                }
+                return "value-" + key;
+            }
+        });
+        final Thread slowThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cache.get("slow");
+            }
+        });
+        slowThread.start();
+        slowLoadStarted.await();
+
+        assert_().that(cache.get("fast")).isEqualTo("value-fast");
+
+        finishSlowLoad.countDown();
+        slowThread.join();
+    }
+
+    @Test
+    public void whenManyThreadsAskForSameMissingKey_providerIsExecutedOnce() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch finishLoad = new CountDownLatch(1);
+        final Cache<String, String> cache = new Cache<>(new Cache.CacheProvider<String, String>() {
+            @Nonnull
+            @Override
+            public String load(@Nonnull String key) {
+                loads.incrementAndGet();
+                loadStarted.countDown();
+                awaitUninterruptibly(finishLoad);
+                return "value";
+            }
+        });
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    results.add(cache.get("key"));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        loadStarted.await();
+        finishLoad.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assert_().that(loads.get()).isEqualTo(1);
+        assert_().that(results).containsExactly("value", "value", "value", "value");
+    }
+
+    @Test
+    public void whenProviderFails_nextCallLoadsAgain() throws Exception {
+        final RuntimeException exception = new RuntimeException();
+        when(provider.load("key1")).thenThrow(exception).thenReturn("value1");
+
+        try {
+            cache.get("key1");
+            fail();
+        } catch (RuntimeException e) {
+            assert_().that(e).isSameAs(exception);
+        }
+
+        assert_().that(cache.get("key1")).isEqualTo("value1");
+    }
+
+    @Test
+    public void whenGetAsync_valueIsLoadedOnScheduler() throws Exception {
+        when(provider.load("key1")).thenReturn("value1");
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        cache.getAsync("key1", scheduler).subscribe(subscriber);
+
+        verify(provider, never()).load("key1");
+        scheduler.triggerActions();
+        subscriber.assertValue("value1");
+        subscriber.assertCompleted();
+    }
+
+    @Test
+    public void whenGetAsyncIsSubscribedTwice_providerIsExecutedOnce() throws Exception {
+        when(provider.load("key1")).thenReturn("value1");
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<String> subscriber1 = new TestSubscriber<>();
+        final TestSubscriber<String> subscriber2 = new TestSubscriber<>();
+
+        cache.getAsync("key1", scheduler).subscribe(subscriber1);
+        cache.getAsync("key1", scheduler).subscribe(subscriber2);
+        scheduler.triggerActions();
+
+        verify(provider, times(1)).load("key1");
+        subscriber1.assertValue("value1");
+        subscriber2.assertValue("value1");
+    }
+
+    @Test
+    public void whenValueIsCached_getAsyncReturnsItWithoutScheduler() throws Exception {
+        when(provider.load("key1")).thenReturn("value1");
+        cache.get("key1");
+        final TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        cache.getAsync("key1", new TestScheduler()).subscribe(subscriber);
+
+        subscriber.assertValue("value1");
+        subscriber.assertCompleted();
+    }
+
+    @Test
+    public void whenValueIsCachedAfterGetAsyncWasCalled_subscriptionReturnsItWithoutScheduler() throws Exception {
+        when(provider.load("key1")).thenReturn("value1");
+        final Observable<String> observable = cache.getAsync("key1", new TestScheduler());
+        cache.get("key1");
+        final TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        observable.subscribe(subscriber);
+
+        subscriber.assertValue("value1");
+        subscriber.assertCompleted();
+    }
+
+    @Test
+    public void whenValueIsNotRequested_getAsyncDoesNotEmitIt() throws Exception {
+        when(provider.load("key1")).thenReturn("value1");
+        cache.get("key1");
+        final TestSubscriber<String> subscriber = new TestSubscriber<>(0);
+
+        cache.getAsync("key1", new TestScheduler()).subscribe(subscriber);
+
+        subscriber.assertNoValues();
+        subscriber.requestMore(1);
+        subscriber.assertValue("value1");
+        subscriber.assertCompleted();
+    }
+
+    @Test
+    public void whenUnsubscribedBeforeLoad_valueIsNotEmittedButIsCached() throws Exception {
+        when(provider.load("key1")).thenReturn("value1");
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        cache.getAsync("key1", scheduler).subscribe(subscriber).unsubscribe();
+        scheduler.triggerActions();
+
+        subscriber.assertNoValues();
+        subscriber.assertNoTerminalEvent();
+        assert_().that(cache.get("key1")).isEqualTo("value1");
+        verify(provider, times(1)).load("key1");
+    }
+
+    @Test
+    public void whenAsyncLoadFails_errorIsReturned() throws Exception {
+        final RuntimeException exception = new RuntimeException();
+        when(provider.load("key1")).thenThrow(exception);
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        cache.getAsync("key1", scheduler).subscribe(subscriber);
+        scheduler.triggerActions();
+
+        subscriber.assertError(exception);
+    }
+
+    @Test
+    public void whenWeakValueIsReferenced_sameInstanceIsReturned() throws Exception {
+        final Cache<String, Object> cache = Cache.builder(new ObjectProvider())
+                .weakValues()
+                .build();
+
+        final Object value = cache.get("key1");
+        collectGarbage();
+
+        assert_().that(cache.get("key1")).isSameAs(value);
+    }
+
+    @Test
+    public void whenWeakValueIsNotReferenced_itIsReleased() throws Exception {
+        final ObjectProvider provider = new ObjectProvider();
+        final Cache<String, Object> cache = Cache.builder(provider)
+                .weakValues()
+                .build();
+        final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+        final WeakReference<Object> reference = new WeakReference<>(cache.get("key1"), queue);
+
+        awaitCollected(reference, queue);
+        cache.get("key1");
+
+        assert_().that(provider.loads).isEqualTo(2);
+        assert_().that(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenExpireAfterWritePassed_valueIsLoadedAgain() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final Cache<String, String> cache = Cache.builder(provider)
+                .expireAfterWrite(10, TimeUnit.SECONDS)
+                .scheduler(scheduler)
+                .build();
+        when(provider.load("key1")).thenReturn("value1", "value2");
+
+        assert_().that(cache.get("key1")).isEqualTo("value1");
+        scheduler.advanceTimeBy(9, TimeUnit.SECONDS);
+        assert_().that(cache.get("key1")).isEqualTo("value1");
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        assert_().that(cache.get("key1")).isEqualTo("value2");
+    }
+
+    @Test
+    public void whenValueIsRead_expireAfterAccessIsPostponed() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final Cache<String, String> cache = Cache.builder(provider)
+                .expireAfterAccess(10, TimeUnit.SECONDS)
+                .scheduler(scheduler)
+                .build();
+        when(provider.load("key1")).thenReturn("value1", "value2");
+
+        cache.get("key1");
+        scheduler.advanceTimeBy(9, TimeUnit.SECONDS);
+        cache.get("key1");
+        scheduler.advanceTimeBy(9, TimeUnit.SECONDS);
+        assert_().that(cache.get("key1")).isEqualTo("value1");
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        assert_().that(cache.get("key1")).isEqualTo("value2");
+    }
+
+    @Test
+    public void whenExpiredValuesAreNotRead_cleanUpRemovesThem() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final Cache<String, String> cache = Cache.builder(provider)
+                .expireAfterWrite(10, TimeUnit.SECONDS)
+                .scheduler(scheduler)
+                .build();
+        when(provider.load("key1")).thenReturn("value1");
+        when(provider.load("key2")).thenReturn("value2");
+        cache.get("key1");
+        cache.get("key2");
+
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        cache.cleanUp();
+
+        assert_().that(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenRefreshAfterWritePassed_oldValueIsReturnedUntilNewIsLoaded() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final Cache<String, String> cache = Cache.builder(provider)
+                .refreshAfterWrite(10, TimeUnit.SECONDS)
+                .scheduler(scheduler)
+                .build();
+        when(provider.load("key1")).thenReturn("value1", "value2");
+        cache.get("key1");
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+
+        assert_().that(cache.get("key1")).isEqualTo("value1");
+        assert_().that(cache.get("key1")).isEqualTo("value1");
+        scheduler.triggerActions();
+
+        assert_().that(cache.get("key1")).isEqualTo("value2");
+        verify(provider, times(2)).load("key1");
+    }
+
+    @Test
+    public void whenKeyIsEvictedDuringRefresh_newerValuesAreKept() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final CountDownLatch refreshWeighStarted = new CountDownLatch(1);
+        final CountDownLatch finishRefreshWeigh = new CountDownLatch(1);
+        final Cache<String, String> cache = Cache.builder(provider)
+                .maximumWeight(1, new Cache.Weigher<String, String>() {
+                    @Override
+                    public int weigh(@Nonnull String key, @Nonnull String value) {
+                        if (value.equals("refreshed")) {
+                            refreshWeighStarted.countDown();
+                            awaitUninterruptibly(finishRefreshWeigh);
+                        }
+                        return 1;
+                    }
+                })
+                .refreshAfterWrite(10, TimeUnit.SECONDS)
+                .scheduler(scheduler)
+                .build();
+        when(provider.load("key1")).thenReturn("value1", "refreshed");
+        when(provider.load("key2")).thenReturn("value2");
+        cache.get("key1");
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        cache.get("key1");
+        final Thread refreshThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                scheduler.triggerActions();
+            }
+        });
+        refreshThread.start();
+        refreshWeighStarted.await();
+
+        cache.get("key2");
+        finishRefreshWeigh.countDown();
+        refreshThread.join();
+
+        assert_().that(cache.size()).isEqualTo(1);
+        assert_().that(cache.get("key2")).isEqualTo("value2");
+        verify(provider, times(1)).load("key2");
+    }
+
+    @Test
+    public void whenRefreshFails_oldValueIsKept() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final Cache<String, String> cache = Cache.builder(provider)
+                .refreshAfterWrite(10, TimeUnit.SECONDS)
+                .scheduler(scheduler)
+                .build();
+        when(provider.load("key1")).thenReturn("value1").thenThrow(new RuntimeException());
+        cache.get("key1");
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+
+        cache.get("key1");
+        scheduler.triggerActions();
+
+        assert_().that(cache.get("key1")).isEqualTo("value1");
+    }
+
+    @Test
+    public void whenGetAll_missingKeysAreLoadedInSingleBatch() throws Exception {
+        final BatchProvider batchProvider = new BatchProvider();
+        final Cache<String, String> cache = new Cache<>(batchProvider);
+        cache.get("key1");
+
+        final Map<String, String> values = cache.getAll(Arrays.asList("key3", "key1", "key2"));
+
+        assert_().that(values.keySet()).containsExactly("key3", "key1", "key2").inOrder();
+        assert_().that(values.values()).containsExactly("value-key3", "value-key1", "value-key2").inOrder();
+        assert_().that(batchProvider.batches).containsExactly(Arrays.asList("key3", "key2"));
+    }
+
+    @Test
+    public void whenAllKeysAreCached_batchProviderIsNotCalled() throws Exception {
+        final BatchProvider batchProvider = new BatchProvider();
+        final Cache<String, String> cache = new Cache<>(batchProvider);
+        cache.getAll(Arrays.asList("key1", "key2"));
+
+        cache.getAll(Arrays.asList("key2", "key1"));
+
+        assert_().that(batchProvider.batches).hasSize(1);
+    }
+
+    @Test
+    public void whenProviderIsNotBatch_getAllLoadsKeysOneByOne() throws Exception {
+        when(provider.load("key1")).thenReturn("value1");
+        when(provider.load("key2")).thenReturn("value2");
+
+        final Map<String, String> values = cache.getAll(Arrays.asList("key1", "key2"));
+
+        assert_().that(values.values()).containsExactly("value1", "value2").inOrder();
+    }
+
+    @Test
+    public void whenStatsAreRecorded_hitsMissesAndLoadsAreCounted() throws Exception {
+        final Cache<String, String> cache = Cache.builder(provider)
+                .recordStats()
+                .build();
+        when(provider.load("key1")).thenReturn("value1");
+        when(provider.load("key2")).thenThrow(new RuntimeException());
+
+        cache.get("key1");
+        cache.get("key1");
+        cache.get("key1");
+        try {
+            cache.get("key2");
+            fail();
+        } catch (RuntimeException ignore) {
+        }
+
+        final CacheStats stats = cache.stats();
+        assert_().that(stats.hitCount()).isEqualTo(2L);
+        assert_().that(stats.missCount()).isEqualTo(2L);
+        assert_().that(stats.loadSuccessCount()).isEqualTo(1L);
+        assert_().that(stats.loadFailureCount()).isEqualTo(1L);
+        assert_().that(stats.maxLoadTimeNanos()).isAtMost(stats.totalLoadTimeNanos());
+    }
+
+    @Test
+    public void whenValueIsEvicted_evictionIsCounted() throws Exception {
+        final Cache<String, String> cache = Cache.builder(provider)
+                .maximumSize(1)
+                .recordStats()
+                .build();
+        when(provider.load("key1")).thenReturn("value1");
+        when(provider.load("key2")).thenReturn("value2");
+
+        cache.get("key1");
+        cache.get("key2");
+
+        assert_().that(cache.stats().evictionCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void whenStatsAreNotRecorded_statsAreEmpty() throws Exception {
+        when(provider.load("key1")).thenReturn("value1");
+
+        cache.get("key1");
+
+        assert_().that(cache.stats()).isEqualTo(new CacheStats(0, 0, 0, 0, 0, 0, 0));
+    }
+
+    private static class BatchProvider implements Cache.BatchCacheProvider<String, String> {
+        private final List<Collection<String>> batches = new ArrayList<>();
+
+        @Nonnull
+        @Override
+        public Map<String, String> loadAll(@Nonnull Collection<String> keys) {
+            batches.add(keys);
+            final Map<String, String> values = new HashMap<>();
+            for (String key : keys) {
+                values.put(key, "value-" + key);
+            }
+            return values;
+        }
+
+        @Nonnull
+        @Override
+        public String load(@Nonnull String key) {
+            return "value-" + key;
+        }
+    }
+
+    private static class ObjectProvider implements Cache.CacheProvider<String, Object> {
+        private int loads = 0;
+
+        @Nonnull
+        @Override
+        public Object load(@Nonnull String key) {
+            loads += 1;
+            return new Object();
+        }
+    }
+
+    private static void collectGarbage() throws InterruptedException {
+        System.gc();
+        Thread.sleep(10);
+    }
+
+    private static void awaitCollected(@Nonnull WeakReference<?> reference,
+                                       @Nonnull ReferenceQueue<?> queue) throws InterruptedException {
+        for (int attempt = 0; attempt < GC_ATTEMPTS; attempt++) {
+            System.gc();
+            if (queue.remove(GC_TIMEOUT_MILLIS) == reference) {
+                return;
+            }
+        }
+        if (reference.get() != null) {
+            fail("Value was not garbage collected after " + GC_ATTEMPTS + " attempts");
+        }
+    }
+
+    private static void awaitUninterruptibly(@Nonnull CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
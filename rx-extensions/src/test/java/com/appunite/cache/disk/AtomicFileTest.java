@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import rx.schedulers.TestScheduler;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class AtomicFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private AtomicFile atomicFile;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(folder.getRoot(), "file");
+        atomicFile = new AtomicFile(file, FsyncPolicy.always());
+    }
+
+    @Test
+    public void testWhenFileDoesNotExist_readReturnsNull() throws Exception {
+        assert_().that(atomicFile.read()).isNull();
+    }
+
+    @Test
+    public void testWhenWritten_readReturnsContent() throws Exception {
+        atomicFile.write(new byte[]{1, 2, 3});
+
+        assert_().that(atomicFile.read()).isEqualTo(new byte[]{1, 2, 3});
+    }
+
+    @Test
+    public void testWhenWrittenTwice_readReturnsLatestContent() throws Exception {
+        atomicFile.write(new byte[]{1, 2, 3});
+        atomicFile.write(new byte[]{4});
+
+        assert_().that(atomicFile.read()).isEqualTo(new byte[]{4});
+    }
+
+    @Test
+    public void testAfterWrite_temporaryFileIsNotLeft() throws Exception {
+        atomicFile.write(new byte[]{1, 2, 3});
+
+        assert_().that(folder.getRoot().list()).asList().containsExactly("file");
+    }
+
+    @Test
+    public void testWhenTemporaryFileIsLeftByCrash_contentIsNotAffected() throws Exception {
+        atomicFile.write(new byte[]{1, 2, 3});
+        new AtomicFile(new File(folder.getRoot(), "other"), FsyncPolicy.never()).write(new byte[]{5});
+        assert_().that(new File(folder.getRoot(), "other").renameTo(new File(folder.getRoot(), "file.tmp"))).isTrue();
+
+        assert_().that(atomicFile.read()).isEqualTo(new byte[]{1, 2, 3});
+        atomicFile.write(new byte[]{4});
+        assert_().that(atomicFile.read()).isEqualTo(new byte[]{4});
+    }
+
+    @Test
+    public void testWhenCrashedAfterFileWasMovedToBackup_backupIsRestored() throws Exception {
+        atomicFile.write(new byte[]{1, 2, 3});
+        assert_().that(file.renameTo(new File(folder.getRoot(), "file.bak"))).isTrue();
+
+        assert_().that(atomicFile.read()).isEqualTo(new byte[]{1, 2, 3});
+        assert_().that(folder.getRoot().list()).asList().containsExactly("file");
+    }
+
+    @Test
+    public void testWhenCrashedAfterNewFileTookPlace_backupIsRemoved() throws Exception {
+        atomicFile.write(new byte[]{1, 2, 3});
+        assert_().that(file.renameTo(new File(folder.getRoot(), "file.bak"))).isTrue();
+        final FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(new byte[]{4});
+        outputStream.close();
+
+        assert_().that(atomicFile.read()).isEqualTo(new byte[]{4});
+        assert_().that(folder.getRoot().list()).asList().containsExactly("file");
+    }
+
+    @Test
+    public void testWhenDeleted_readReturnsNull() throws Exception {
+        atomicFile.write(new byte[]{1, 2, 3});
+
+        atomicFile.delete();
+
+        assert_().that(atomicFile.read()).isNull();
+        assert_().that(file.exists()).isFalse();
+    }
+
+    @Test
+    public void testWhenPeriodic_forceOncePerPeriodOfClock() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final List<Boolean> forces = new ArrayList<>();
+        final AtomicFile periodicFile = new AtomicFile(file, FsyncPolicy.periodic(1, TimeUnit.SECONDS), scheduler) {
+            @Override
+            synchronized void write(@Nonnull byte[] data, boolean force) throws IOException {
+                forces.add(force);
+                super.write(data, force);
+            }
+        };
+
+        periodicFile.write(new byte[]{1});
+        periodicFile.write(new byte[]{2});
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        periodicFile.write(new byte[]{3});
+
+        assert_().that(forces).containsExactly(true, false, true).inOrder();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class BinaryReaderTest {
+
+    /**
+     * Varint of -1, writer never writes it but corrupted data can contain it
+     */
+    private static final byte[] NEGATIVE_VARINT = {
+            -1, -1, -1, -1, -1, -1, -1, -1, -1, 1
+    };
+
+    @Test
+    public void testVarints_areReadInTheSameOrder() throws Exception {
+        final BinaryWriter writer = new BinaryWriter(0);
+        writer.writeVarint(0);
+        writer.writeVarint(127);
+        writer.writeVarint(128);
+        writer.writeVarint(Long.MAX_VALUE);
+        writer.writeSignedVarint(-1);
+        writer.writeSignedVarint(Long.MIN_VALUE);
+
+        final BinaryReader reader = new BinaryReader(writer.toByteArray());
+
+        assert_().that(reader.readVarint()).isEqualTo(0L);
+        assert_().that(reader.readVarint()).isEqualTo(127L);
+        assert_().that(reader.readVarint()).isEqualTo(128L);
+        assert_().that(reader.readVarint()).isEqualTo(Long.MAX_VALUE);
+        assert_().that(reader.readSignedVarint()).isEqualTo(-1L);
+        assert_().that(reader.readSignedVarint()).isEqualTo(Long.MIN_VALUE);
+        assert_().that(reader.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void testSmallNumbers_takeOneByte() throws Exception {
+        final BinaryWriter writer = new BinaryWriter();
+        writer.writeVarint(127);
+        writer.writeSignedVarint(-64);
+
+        assert_().that(writer.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testStrings_areRead() throws Exception {
+        final BinaryWriter writer = new BinaryWriter();
+        writer.writeString("krowa");
+        writer.writeString(null);
+        writer.writeString("\u017c\u00f3\u0142w");
+        writer.writeBytes(new byte[]{1, 2, 3});
+        writer.writeBoolean(true);
+
+        final BinaryReader reader = new BinaryReader(writer.toByteArray());
+
+        assert_().that(reader.readString()).isEqualTo("krowa");
+        assert_().that(reader.readString()).isNull();
+        assert_().that(reader.readString()).isEqualTo("\u017c\u00f3\u0142w");
+        assert_().that(reader.readBytes()).isEqualTo(new byte[]{1, 2, 3});
+        assert_().that(reader.readBoolean()).isTrue();
+    }
+
+    @Test
+    public void testRepeatedString_isWrittenAsReference() throws Exception {
+        final BinaryWriter writer = new BinaryWriter();
+        writer.writeString("some long identifier");
+        final int sizeAfterFirst = writer.size();
+        writer.writeString("some long identifier");
+
+        assert_().that(writer.size() - sizeAfterFirst).isEqualTo(1);
+        final BinaryReader reader = new BinaryReader(writer.toByteArray());
+        assert_().that(reader.readString()).isEqualTo("some long identifier");
+        assert_().that(reader.readString()).isEqualTo("some long identifier");
+    }
+
+    @Test
+    public void testReadByteBuffer_returnViewOfData() throws Exception {
+        final BinaryWriter writer = new BinaryWriter();
+        writer.writeBytes(new byte[]{1, 2, 3});
+        writer.writeVarint(4);
+        final byte[] data = writer.toByteArray();
+        final BinaryReader reader = new BinaryReader(data);
+
+        final ByteBuffer value = reader.readByteBuffer();
+
+        assert_().that(value.remaining()).isEqualTo(3);
+        assert_().that(value.get(2)).isEqualTo((byte) 3);
+        data[3] = 7;
+        assert_().that(value.get(2)).isEqualTo((byte) 7);
+        assert_().that(reader.readVarint()).isEqualTo(4L);
+    }
+
+    @Test(expected = IOException.class)
+    public void testWhenDataIsTruncated_throwIOException() throws Exception {
+        final BinaryWriter writer = new BinaryWriter();
+        writer.writeString("krowa");
+        final byte[] data = writer.toByteArray();
+
+        new BinaryReader(Arrays.copyOf(data, data.length - 1)).readString();
+    }
+
+    @Test(expected = IOException.class)
+    public void testWhenStringReferenceIsUnknown_throwIOException() throws Exception {
+        final BinaryWriter writer = new BinaryWriter();
+        writer.writeVarint(BinaryWriter.STRING_REFERENCE + 3);
+
+        new BinaryReader(writer.toByteArray()).readString();
+    }
+
+    @Test(expected = IOException.class)
+    public void testWhenLengthIsNegative_throwIOException() throws Exception {
+        final BinaryWriter writer = new BinaryWriter();
+        writer.writeVarint(BinaryWriter.STRING_LITERAL);
+
+        new BinaryReader(concat(writer.toByteArray(), NEGATIVE_VARINT)).readString();
+    }
+
+    @Test(expected = IOException.class)
+    public void testWhenNegativeIsReadAsInt_throwIOException() throws Exception {
+        new BinaryReader(NEGATIVE_VARINT).readInt();
+    }
+
+    @Test(expected = IOException.class)
+    public void testWhenStringReferenceIsNegative_throwIOException() throws Exception {
+        new BinaryReader(NEGATIVE_VARINT).readString();
+    }
+
+    @Test(expected = IOException.class)
+    public void testWhenNoMoreData_throwIOException() throws Exception {
+        new BinaryReader(new byte[0]).readVarint();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        final byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
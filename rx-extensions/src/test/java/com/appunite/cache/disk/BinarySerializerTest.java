@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class BinarySerializerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testSerializedValue_isDeserialized() throws Exception {
+        final BinarySerializer<String> serializer = new BinarySerializer<>(new StringCodec());
+
+        final byte[] data = serializer.serialize("krowa");
+
+        assert_().that(serializer.deserialize(data)).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testWhenDataIsInLegacyFormat_useLegacySerializer() throws Exception {
+        final BinarySerializer<String> serializer = new BinarySerializer<>(new StringCodec(),
+                new LegacySerializer());
+
+        assert_().that(serializer.deserialize("\"krowa\"".getBytes(UTF_8))).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testWhenHasLegacySerializer_writeBinaryFormat() throws Exception {
+        final BinarySerializer<String> serializer = new BinarySerializer<>(new StringCodec(),
+                new LegacySerializer());
+
+        final byte[] data = serializer.serialize("krowa");
+
+        assert_().that(new BinarySerializer<>(new StringCodec()).deserialize(data)).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testDeserializeFromDirectBuffer_returnValue() throws Exception {
+        final BinarySerializer<String> serializer = new BinarySerializer<>(new StringCodec());
+        final byte[] data = serializer.serialize("krowa");
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length + 2);
+        buffer.put((byte) 1).put(data).put((byte) 2);
+        buffer.position(1);
+        buffer.limit(1 + data.length);
+
+        assert_().that(serializer.deserialize(buffer)).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testDeserializeLegacyFormatFromDirectBuffer_useLegacySerializer() throws Exception {
+        final BinarySerializer<String> serializer = new BinarySerializer<>(new StringCodec(),
+                new LegacySerializer());
+        final byte[] data = "\"krowa\"".getBytes(UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+
+        assert_().that(serializer.deserialize(buffer)).isEqualTo("krowa");
+    }
+
+    @Test(expected = IOException.class)
+    public void testWhenDataIsInUnknownFormat_throwIOException() throws Exception {
+        new BinarySerializer<>(new StringCodec()).deserialize("\"krowa\"".getBytes(UTF_8));
+    }
+
+    private static class StringCodec implements BinaryCodec<String> {
+        @Override
+        public void encode(@Nonnull String value, @Nonnull BinaryWriter writer) throws IOException {
+            writer.writeString(value);
+        }
+
+        @Nonnull
+        @Override
+        public String decode(@Nonnull BinaryReader reader) throws IOException {
+            final String value = reader.readString();
+            if (value == null) {
+                throw new IOException("Null value");
+            }
+            return value;
+        }
+    }
+
+    private static class LegacySerializer implements Serializer<String> {
+        @Nonnull
+        @Override
+        public byte[] serialize(@Nonnull String value) throws IOException {
+            return ("\"" + value + "\"").getBytes(UTF_8);
+        }
+
+        @Nonnull
+        @Override
+        public String deserialize(@Nonnull byte[] data) throws IOException {
+            final String json = new String(data, UTF_8);
+            return json.substring(1, json.length() - 1);
+        }
+    }
+}
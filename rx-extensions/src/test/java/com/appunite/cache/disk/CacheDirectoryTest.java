@@ -0,0 +1,273 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import com.appunite.rx.subjects.CacheSubject;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+
+import rx.schedulers.TestScheduler;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class CacheDirectoryTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestScheduler scheduler;
+    private File directory;
+    private CacheDirectory cacheDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TestScheduler();
+        directory = new File(folder.getRoot(), "cache");
+        cacheDirectory = new CacheDirectory(directory, 10, FsyncPolicy.never(), scheduler);
+    }
+
+    @Test
+    public void testWhenEmpty_returnNull() throws Exception {
+        assert_().that(cacheDirectory.get("key")).isNull();
+        assert_().that(cacheDirectory.size()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testWhenPut_getReturnsValue() throws Exception {
+        cacheDirectory.put("user: 1, posts", bytes("krowa"));
+
+        assert_().that(string(cacheDirectory.get("user: 1, posts"))).isEqualTo("krowa");
+        assert_().that(cacheDirectory.size()).isEqualTo(5L);
+    }
+
+    @Test
+    public void testWhenPutTwice_sizeCountsOnlyLatestValue() throws Exception {
+        cacheDirectory.put("key", bytes("krowa"));
+        cacheDirectory.put("key", bytes("pies"));
+
+        assert_().that(string(cacheDirectory.get("key"))).isEqualTo("pies");
+        assert_().that(cacheDirectory.size()).isEqualTo(4L);
+    }
+
+    @Test
+    public void testWhenRemoved_returnNull() throws Exception {
+        cacheDirectory.put("key", bytes("krowa"));
+
+        cacheDirectory.remove("key");
+
+        assert_().that(cacheDirectory.get("key")).isNull();
+        assert_().that(cacheDirectory.size()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testFile_isKeptInShardDirectory() throws Exception {
+        cacheDirectory.put("user: 1, posts", bytes("krowa"));
+
+        final String name = CacheDirectory.fileName("user: 1, posts");
+        assert_().that(new File(new File(directory, name.substring(0, 2)), name).exists()).isTrue();
+    }
+
+    @Test
+    public void testAfterReopen_valuesAndSizeAreRestored() throws Exception {
+        cacheDirectory.put("key1", bytes("krowa"));
+        cacheDirectory.put("key2", bytes("pies"));
+
+        final CacheDirectory reopened = new CacheDirectory(directory, 10, FsyncPolicy.never(), scheduler);
+
+        assert_().that(string(reopened.get("key1"))).isEqualTo("krowa");
+        assert_().that(string(reopened.get("key2"))).isEqualTo("pies");
+        assert_().that(reopened.size()).isEqualTo(9L);
+    }
+
+    @Test
+    public void testWhenOverQuota_leastRecentlyUsedIsRemovedInBackground() throws Exception {
+        cacheDirectory.put("key1", bytes("krowa"));
+        cacheDirectory.put("key2", bytes("pies"));
+        cacheDirectory.get("key1");
+        cacheDirectory.put("key3", bytes("kot"));
+
+        assert_().that(cacheDirectory.size()).isEqualTo(12L);
+        scheduler.triggerActions();
+
+        assert_().that(cacheDirectory.size()).isEqualTo(8L);
+        assert_().that(cacheDirectory.get("key2")).isNull();
+        assert_().that(string(cacheDirectory.get("key1"))).isEqualTo("krowa");
+        assert_().that(string(cacheDirectory.get("key3"))).isEqualTo("kot");
+    }
+
+    @Test
+    public void testAfterReopen_accessOrderIsRestoredFromModificationTime() throws Exception {
+        cacheDirectory.put("key1", bytes("krowa"));
+        cacheDirectory.put("key2", bytes("pies"));
+        setLastModified("key1", 2000);
+        setLastModified("key2", 1000);
+
+        final CacheDirectory reopened = new CacheDirectory(directory, 10, FsyncPolicy.never(), scheduler);
+        reopened.put("key3", bytes("kot"));
+        scheduler.triggerActions();
+
+        assert_().that(reopened.get("key2")).isNull();
+        assert_().that(string(reopened.get("key1"))).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testWhenRead_fileModificationTimeIsNotChanged() throws Exception {
+        cacheDirectory.put("key1", bytes("krowa"));
+        setLastModified("key1", 1000);
+
+        cacheDirectory.get("key1");
+
+        assert_().that(file("key1").lastModified()).isEqualTo(1000L);
+    }
+
+    @Test
+    public void testAfterTrimAndReopen_accessOrderOfReadFilesIsRestored() throws Exception {
+        cacheDirectory.put("key1", bytes("krowa"));
+        cacheDirectory.put("key2", bytes("pies"));
+        setLastModified("key1", 1000);
+        setLastModified("key2", 2000);
+        cacheDirectory.get("key1");
+
+        cacheDirectory.trim();
+        final CacheDirectory reopened = new CacheDirectory(directory, 10, FsyncPolicy.never(), scheduler);
+        reopened.put("key3", bytes("kot"));
+        scheduler.triggerActions();
+
+        assert_().that(reopened.get("key2")).isNull();
+        assert_().that(string(reopened.get("key1"))).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testWhenKeyIsWrittenAndReadConcurrently_readAlwaysReturnsWholeValue() throws Exception {
+        final CacheDirectory cacheDirectory = new CacheDirectory(directory, 1000, FsyncPolicy.never(), scheduler);
+        cacheDirectory.put("key", bytes("krowa"));
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        cacheDirectory.put("key", bytes(i % 2 == 0 ? "pies" : "krowa"));
+                    }
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        writer.start();
+        for (int i = 0; i < 200; i++) {
+            assert_().that(Arrays.asList("krowa", "pies")).contains(string(cacheDirectory.get("key")));
+        }
+        writer.join();
+
+        assert_().that(error.get()).isNull();
+        assert_().that(cacheDirectory.size()).isEqualTo(5L);
+    }
+
+    @Test
+    public void testWhenOpened_temporaryFilesAreRemoved() throws Exception {
+        final String name = CacheDirectory.fileName("key");
+        final File shard = new File(directory, name.substring(0, 2));
+        assert_().that(shard.mkdirs()).isTrue();
+        final File tempFile = new File(shard, name + ".tmp");
+        new AtomicFile(tempFile, FsyncPolicy.never()).write(bytes("krowa"));
+
+        assert_().that(cacheDirectory.size()).isEqualTo(0L);
+        assert_().that(tempFile.exists()).isFalse();
+    }
+
+    @Test
+    public void testWhenOpenedAfterCrashDuringReplace_backupIsRestored() throws Exception {
+        cacheDirectory.put("key", bytes("krowa"));
+        final File file = file("key");
+        assert_().that(file.renameTo(new File(file.getPath() + ".bak"))).isTrue();
+
+        final CacheDirectory reopened = new CacheDirectory(directory, 10, FsyncPolicy.never(), scheduler);
+
+        assert_().that(reopened.size()).isEqualTo(5L);
+        assert_().that(string(reopened.get("key"))).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testCacheCreator_readsWrittenValue() throws Exception {
+        final CacheSubject.CacheCreator<String> cacheCreator =
+                cacheDirectory.cacheCreator("key", new StringSerializer());
+
+        cacheCreator.writeToCache("krowa");
+
+        assert_().that(cacheCreator.readFromCache()).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testCacheCreator_whenNullWritten_valueIsRemoved() throws Exception {
+        final CacheSubject.CacheCreator<String> cacheCreator =
+                cacheDirectory.cacheCreator("key", new StringSerializer());
+        cacheCreator.writeToCache("krowa");
+
+        cacheCreator.writeToCache(null);
+
+        assert_().that(cacheCreator.readFromCache()).isNull();
+        assert_().that(cacheDirectory.size()).isEqualTo(0L);
+    }
+
+    private void setLastModified(@Nonnull String key, long time) {
+        assert_().that(file(key).setLastModified(time)).isTrue();
+    }
+
+    @Nonnull
+    private File file(@Nonnull String key) {
+        final String name = CacheDirectory.fileName(key);
+        return new File(new File(directory, name.substring(0, 2)), name);
+    }
+
+    @Nonnull
+    private static byte[] bytes(@Nonnull String value) {
+        return value.getBytes(UTF_8);
+    }
+
+    @Nonnull
+    private static String string(@Nonnull byte[] value) {
+        return new String(value, UTF_8);
+    }
+
+    private static class StringSerializer implements Serializer<String> {
+        @Nonnull
+        @Override
+        public byte[] serialize(@Nonnull String value) throws IOException {
+            return bytes(value);
+        }
+
+        @Nonnull
+        @Override
+        public String deserialize(@Nonnull byte[] data) throws IOException {
+            return string(data);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class FsyncPolicyTest {
+
+    @Test
+    public void testAlways_syncEveryWrite() throws Exception {
+        assert_().that(FsyncPolicy.always().shouldSync(Long.MIN_VALUE, 0)).isTrue();
+        assert_().that(FsyncPolicy.always().shouldSync(10, 10)).isTrue();
+    }
+
+    @Test
+    public void testNever_doNotSync() throws Exception {
+        assert_().that(FsyncPolicy.never().shouldSync(Long.MIN_VALUE, 0)).isFalse();
+        assert_().that(FsyncPolicy.never().isNever()).isTrue();
+    }
+
+    @Test
+    public void testPeriodicWhenNeverSynced_sync() throws Exception {
+        assert_().that(FsyncPolicy.periodic(1, TimeUnit.SECONDS).shouldSync(Long.MIN_VALUE, 0)).isTrue();
+    }
+
+    @Test
+    public void testPeriodic_syncOncePerPeriod() throws Exception {
+        final FsyncPolicy policy = FsyncPolicy.periodic(1, TimeUnit.SECONDS);
+
+        assert_().that(policy.shouldSync(1000, 1999)).isFalse();
+        assert_().that(policy.shouldSync(1000, 2000)).isTrue();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPeriodicWithZeroPeriod_throwException() throws Exception {
+        FsyncPolicy.periodic(0, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPeriodicShorterThanMillisecond_throwException() throws Exception {
+        FsyncPolicy.periodic(999, TimeUnit.MICROSECONDS);
+    }
+
+    @Test
+    public void testPeriodicOfOneMillisecond_syncOncePerMillisecond() throws Exception {
+        final FsyncPolicy policy = FsyncPolicy.periodic(1000, TimeUnit.MICROSECONDS);
+
+        assert_().that(policy.shouldSync(10, 10)).isFalse();
+        assert_().that(policy.shouldSync(10, 11)).isTrue();
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import com.appunite.rx.subjects.CacheSubject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import javax.annotation.Nonnull;
+
+import rx.schedulers.TestScheduler;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class JournalStoreTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestScheduler scheduler;
+    private File file;
+    private JournalStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TestScheduler();
+        file = new File(folder.getRoot(), "journal");
+        store = new JournalStore(file, 1024, scheduler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    public void testWhenEmpty_returnNull() throws Exception {
+        assert_().that(store.get("key")).isNull();
+    }
+
+    @Test
+    public void testWhenPut_getReturnsValue() throws Exception {
+        store.put("key", bytes("krowa"));
+
+        assert_().that(string(store.get("key"))).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testWhenPutTwice_getReturnsLatestValue() throws Exception {
+        store.put("key", bytes("krowa"));
+        store.put("key", bytes("pies"));
+
+        assert_().that(string(store.get("key"))).isEqualTo("pies");
+    }
+
+    @Test
+    public void testWhenRemoved_getReturnsNull() throws Exception {
+        store.put("key", bytes("krowa"));
+
+        store.remove("key");
+
+        assert_().that(store.get("key")).isNull();
+        assert_().that(store.size()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testWhenReopened_valuesAreRestored() throws Exception {
+        store.put("key1", bytes("krowa"));
+        store.put("key2", bytes("pies"));
+        store.put("key1", bytes("kot"));
+        store.remove("key2");
+        store.close();
+
+        store = new JournalStore(file, 1024, scheduler);
+
+        assert_().that(string(store.get("key1"))).isEqualTo("kot");
+        assert_().that(store.get("key2")).isNull();
+    }
+
+    @Test
+    public void testWhenLastRecordIsTruncated_previousRecordsAreRestored() throws Exception {
+        store.put("key1", bytes("krowa"));
+        store.put("key2", bytes("pies"));
+        store.close();
+        truncate(file, file.length() - 2);
+
+        store = new JournalStore(file, 1024, scheduler);
+
+        assert_().that(string(store.get("key1"))).isEqualTo("krowa");
+        assert_().that(store.get("key2")).isNull();
+        store.put("key3", bytes("kot"));
+        store.close();
+        store = new JournalStore(file, 1024, scheduler);
+        assert_().that(string(store.get("key3"))).isEqualTo("kot");
+    }
+
+    @Test
+    public void testWhenFileIsNotJournal_startEmpty() throws Exception {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.write(bytes("some old content"));
+        randomAccessFile.close();
+
+        assert_().that(store.get("key")).isNull();
+        store.put("key", bytes("krowa"));
+        assert_().that(string(store.get("key"))).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testWhenMaxSizeIsExceeded_leastRecentlyUsedIsRemoved() throws Exception {
+        store.close();
+        store = new JournalStore(file, 60, scheduler);
+        store.put("key1", new byte[10]);
+        store.put("key2", new byte[10]);
+        store.get("key1");
+
+        store.put("key3", new byte[10]);
+
+        assert_().that(store.get("key1")).isNotNull();
+        assert_().that(store.get("key2")).isNull();
+        assert_().that(store.get("key3")).isNotNull();
+    }
+
+    @Test
+    public void testWhenCompacted_fileIsSmallerAndValuesAreKept() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            store.put("key1", new byte[100]);
+        }
+        store.put("key2", bytes("krowa"));
+        final long before = file.length();
+
+        store.compact();
+
+        assert_().that(file.length()).isLessThan(before);
+        assert_().that(store.get("key1")).hasLength(100);
+        assert_().that(string(store.get("key2"))).isEqualTo("krowa");
+        store.close();
+        store = new JournalStore(file, 1024, scheduler);
+        assert_().that(string(store.get("key2"))).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testWhenWrittenDuringCompaction_valuesAreKept() throws Exception {
+        store.put("key1", bytes("krowa"));
+        store.put("key2", bytes("pies"));
+        store.put("key3", bytes("kot"));
+        final JournalStore.Compaction compaction = store.startCompaction();
+        compaction.write();
+
+        store.put("key1", bytes("slon"));
+        store.remove("key2");
+        store.put("key4", bytes("mysz"));
+        store.finishCompaction(compaction);
+        compaction.close();
+
+        assert_().that(string(store.get("key1"))).isEqualTo("slon");
+        assert_().that(store.get("key2")).isNull();
+        assert_().that(string(store.get("key3"))).isEqualTo("kot");
+        assert_().that(string(store.get("key4"))).isEqualTo("mysz");
+        store.close();
+        store = new JournalStore(file, 1024, scheduler);
+        assert_().that(string(store.get("key1"))).isEqualTo("slon");
+        assert_().that(store.get("key2")).isNull();
+        assert_().that(string(store.get("key3"))).isEqualTo("kot");
+        assert_().that(string(store.get("key4"))).isEqualTo("mysz");
+    }
+
+    @Test
+    public void testWhenCompactionIsInProgress_secondCompactionIsSkipped() throws Exception {
+        store.put("key", bytes("krowa"));
+        final JournalStore.Compaction compaction = store.startCompaction();
+
+        assert_().that(store.startCompaction()).isNull();
+
+        compaction.close();
+        final JournalStore.Compaction next = store.startCompaction();
+        assert_().that(next).isNotNull();
+        next.close();
+    }
+
+    @Test
+    public void testWhenJournalContainsMostlyObsoleteRecords_compactOnScheduler() throws Exception {
+        final int count = (int) (JournalStore.MIN_COMPACTION_SIZE / 1000) + 1;
+        for (int i = 0; i < count; i++) {
+            store.put("key", new byte[1000]);
+        }
+        final long before = file.length();
+
+        scheduler.triggerActions();
+
+        assert_().that(file.length()).isLessThan(before);
+        assert_().that(store.get("key")).hasLength(1000);
+    }
+
+    @Test
+    public void testWhenSyncAlways_valuesAreRestoredAfterReopen() throws Exception {
+        store.close();
+        store = new JournalStore(file, 1024, FsyncPolicy.always(), scheduler);
+        store.put("key", bytes("krowa"));
+        store.compact();
+        store.put("key2", bytes("pies"));
+        store.close();
+
+        store = new JournalStore(file, 1024, FsyncPolicy.always(), scheduler);
+
+        assert_().that(string(store.get("key"))).isEqualTo("krowa");
+        assert_().that(string(store.get("key2"))).isEqualTo("pies");
+    }
+
+    @Test
+    public void testCacheCreator_readsAndWritesSerializedValue() throws Exception {
+        final CacheSubject.CacheCreator<String> cache = store.cacheCreator("key", new StringSerializer());
+
+        cache.writeToCache("krowa");
+
+        assert_().that(cache.readFromCache()).isEqualTo("krowa");
+        assert_().that(string(store.get("key"))).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testCacheCreatorWhenWriteNull_valueIsRemoved() throws Exception {
+        final CacheSubject.CacheCreator<String> cache = store.cacheCreator("key", new StringSerializer());
+        cache.writeToCache("krowa");
+
+        cache.writeToCache(null);
+
+        assert_().that(cache.readFromCache()).isNull();
+    }
+
+    @Test
+    public void testGetBufferOfSmallValue_returnValue() throws Exception {
+        store.put("key", bytes("krowa"));
+
+        final ByteBuffer buffer = store.getBuffer("key");
+
+        assert_().that(buffer.isDirect()).isFalse();
+        assert_().that(string(toBytes(buffer))).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testGetBufferOfLargeValue_returnMappedValue() throws Exception {
+        store.close();
+        store = new JournalStore(file, 1024 * 1024, scheduler);
+        final byte[] value = new byte[JournalStore.MIN_MAPPED_SIZE];
+        value[value.length - 1] = 42;
+        store.put("other", bytes("krowa"));
+        store.put("key", value);
+
+        final ByteBuffer buffer = store.getBuffer("key");
+
+        assert_().that(buffer.isDirect()).isTrue();
+        assert_().that(buffer.isReadOnly()).isTrue();
+        assert_().that(toBytes(buffer)).isEqualTo(value);
+    }
+
+    @Test
+    public void testWhenJournalIsCompactedAfterMapping_mappedValueIsStillValid() throws Exception {
+        store.close();
+        store = new JournalStore(file, 1024 * 1024, scheduler);
+        final byte[] value = new byte[JournalStore.MIN_MAPPED_SIZE];
+        value[0] = 42;
+        store.put("other", bytes("krowa"));
+        store.put("key", value);
+        final ByteBuffer buffer = store.getBuffer("key");
+
+        store.remove("other");
+        store.put("key", new byte[10]);
+        store.compact();
+
+        assert_().that(toBytes(buffer)).isEqualTo(value);
+    }
+
+    @Test
+    public void testCacheCreatorWithBufferSerializer_decodeFromBuffer() throws Exception {
+        final BufferStringSerializer serializer = new BufferStringSerializer();
+        final CacheSubject.CacheCreator<String> cache = store.cacheCreator("key", serializer);
+        cache.writeToCache("krowa");
+
+        assert_().that(cache.readFromCache()).isEqualTo("krowa");
+        assert_().that(serializer.bufferReads).isEqualTo(1);
+    }
+
+    @Nonnull
+    private static byte[] toBytes(@Nonnull ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static void truncate(@Nonnull File file, long length) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Nonnull
+    private static byte[] bytes(@Nonnull String value) {
+        return value.getBytes(UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value == null ? null : new String(value, UTF_8);
+    }
+
+    private static class StringSerializer implements Serializer<String> {
+        @Nonnull
+        @Override
+        public byte[] serialize(@Nonnull String value) throws IOException {
+            return bytes(value);
+        }
+
+        @Nonnull
+        @Override
+        public String deserialize(@Nonnull byte[] data) throws IOException {
+            return string(data);
+        }
+    }
+
+    private static class BufferStringSerializer extends StringSerializer implements BufferSerializer<String> {
+        private int bufferReads;
+
+        @Nonnull
+        @Override
+        public String deserialize(@Nonnull ByteBuffer data) throws IOException {
+            bufferReads += 1;
+            return string(toBytes(data));
+        }
+    }
+}
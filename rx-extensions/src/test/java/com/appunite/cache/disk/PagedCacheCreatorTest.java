@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.cache.disk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import rx.schedulers.TestScheduler;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class PagedCacheCreatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestScheduler scheduler;
+    private File file;
+    private JournalStore store;
+    private PagedCacheCreator<Feed, String> cache;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TestScheduler();
+        file = new File(folder.getRoot(), "journal");
+        store = new JournalStore(file, 1024 * 1024, scheduler);
+        cache = new PagedCacheCreator<>(store, "feed", new FeedCodec());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    public void testWhenEmpty_returnNull() throws Exception {
+        assert_().that(cache.readFromCache()).isNull();
+    }
+
+    @Test
+    public void testWhenWritten_readSameValue() throws Exception {
+        cache.writeToCache(new Feed("next", items(0, 3)));
+
+        final Feed feed = cache.readFromCache();
+
+        assert_().that(feed.nextToken).isEqualTo("next");
+        assert_().that(feed.items).containsExactly("item0", "item1", "item2").inOrder();
+    }
+
+    @Test
+    public void testWhenPagesAreAppended_valueIsAssembledAfterReopen() throws Exception {
+        final Feed first = new Feed("page2", items(0, 3));
+        cache.writeToCache(first);
+        final Feed second = new Feed("page3", concat(first.items, items(3, 5)));
+        cache.writeToCache(second);
+        cache.writeToCache(new Feed(null, concat(second.items, items(5, 6))));
+
+        store.close();
+        store = new JournalStore(file, 1024 * 1024, scheduler);
+        final Feed feed = new PagedCacheCreator<>(store, "feed", new FeedCodec()).readFromCache();
+
+        assert_().that(feed.nextToken).isNull();
+        assert_().that(feed.items).isEqualTo(items(0, 6));
+    }
+
+    @Test
+    public void testWhenPageIsMapped_valueIsReadAfterReopen() throws Exception {
+        final List<String> items = items(0, 10000);
+        cache.writeToCache(new Feed("next", items));
+        assert_().that(file.length()).isGreaterThan((long) JournalStore.MIN_MAPPED_SIZE);
+
+        store.close();
+        store = new JournalStore(file, 1024 * 1024, scheduler);
+        final Feed feed = new PagedCacheCreator<>(store, "feed", new FeedCodec()).readFromCache();
+
+        assert_().that(feed.nextToken).isEqualTo("next");
+        assert_().that(feed.items).isEqualTo(items);
+    }
+
+    @Test
+    public void testWhenNextPageIsAppended_onlyNewItemsAreWritten() throws Exception {
+        final Feed first = new Feed("page2", items(0, 100));
+        cache.writeToCache(first);
+        final long afterFirstPage = file.length();
+
+        cache.writeToCache(new Feed("page3", concat(first.items, items(100, 101))));
+
+        assert_().that(file.length() - afterFirstPage).isLessThan(100L);
+    }
+
+    @Test
+    public void testWhenItemsAreNotAppended_valueIsRewritten() throws Exception {
+        cache.writeToCache(new Feed("page2", items(0, 3)));
+
+        cache.writeToCache(new Feed(null, items(10, 12)));
+
+        assert_().that(cache.readFromCache().items).containsExactly("item10", "item11").inOrder();
+        store.close();
+        store = new JournalStore(file, 1024 * 1024, scheduler);
+        assert_().that(new PagedCacheCreator<>(store, "feed", new FeedCodec()).readFromCache().items)
+                .containsExactly("item10", "item11").inOrder();
+    }
+
+    @Test
+    public void testWhenWrittenAfterReopen_previousValueIsReplaced() throws Exception {
+        cache.writeToCache(new Feed("page2", items(0, 3)));
+        store.close();
+        store = new JournalStore(file, 1024 * 1024, scheduler);
+        cache = new PagedCacheCreator<>(store, "feed", new FeedCodec());
+
+        cache.writeToCache(new Feed(null, items(10, 11)));
+
+        assert_().that(cache.readFromCache().items).containsExactly("item10");
+    }
+
+    @Test
+    public void testWhenOnlyHeaderChanged_itemsAreKept() throws Exception {
+        final Feed first = new Feed("page2", items(0, 3));
+        cache.writeToCache(first);
+
+        cache.writeToCache(new Feed("other", first.items));
+
+        final Feed feed = new PagedCacheCreator<>(store, "feed", new FeedCodec()).readFromCache();
+        assert_().that(feed.nextToken).isEqualTo("other");
+        assert_().that(feed.items).isEqualTo(items(0, 3));
+    }
+
+    @Test
+    public void testWhenNullIsWritten_valueAndPagesAreRemoved() throws Exception {
+        final Feed first = new Feed("page2", items(0, 3));
+        cache.writeToCache(first);
+        cache.writeToCache(new Feed(null, concat(first.items, items(3, 4))));
+
+        cache.writeToCache(null);
+
+        assert_().that(cache.readFromCache()).isNull();
+        assert_().that(store.size()).isEqualTo(0L);
+    }
+
+    @Nonnull
+    private static List<String> items(int from, int to) {
+        final List<String> items = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            items.add("item" + i);
+        }
+        return items;
+    }
+
+    @Nonnull
+    private static List<String> concat(@Nonnull List<String> first, @Nonnull List<String> second) {
+        final List<String> items = new ArrayList<>(first);
+        items.addAll(second);
+        return items;
+    }
+
+    private static class Feed {
+        @Nullable
+        final String nextToken;
+        @Nonnull
+        final List<String> items;
+
+        Feed(@Nullable String nextToken, @Nonnull List<String> items) {
+            this.nextToken = nextToken;
+            this.items = items;
+        }
+    }
+
+    private static class FeedCodec implements PageCodec<Feed, String> {
+
+        @Nonnull
+        @Override
+        public List<String> items(@Nonnull Feed value) {
+            return value.items;
+        }
+
+        @Override
+        public void encodeHeader(@Nonnull Feed value, @Nonnull BinaryWriter writer) throws IOException {
+            writer.writeString(value.nextToken);
+        }
+
+        @Override
+        public void encodeItem(@Nonnull String item, @Nonnull BinaryWriter writer) throws IOException {
+            writer.writeString(item);
+        }
+
+        @Nonnull
+        @Override
+        public String decodeItem(@Nonnull BinaryReader reader) throws IOException {
+            return String.valueOf(reader.readString());
+        }
+
+        @Nonnull
+        @Override
+        public Feed decode(@Nonnull BinaryReader headerReader, @Nonnull List<String> items) throws IOException {
+            return new Feed(headerReader.readString(), items);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.detector;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.appunite.detector.ListDifferTest.Cat;
+import static com.appunite.detector.ListDifferTest.cats;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+public class DiffChangesDetectorTest {
+
+    private DiffChangesDetector<Cat, Cat> detector;
+    private ChangesDetector.ChangesAdapter adapter;
+
+    @Before
+    public void setUp() throws Exception {
+        detector = new DiffChangesDetector<>(new ListDifferTest.CatDetector());
+        adapter = mock(ChangesDetector.ChangesAdapter.class);
+    }
+
+    @Test
+    public void testStart() throws Exception {
+        detector.newData(adapter, cats(1), false);
+
+        verify(adapter).notifyItemRangeInserted(0, 1);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testNextData_isComparedWithPreviousData() throws Exception {
+        detector.newData(adapter, cats(1, 2), false);
+        reset(adapter);
+
+        detector.newData(adapter, ImmutableList.of(new Cat(2), new Cat(1, "one")), false);
+
+        verify(adapter).notifyItemMoved(1, 0);
+        verify(adapter).notifyItemRangeChanged(1, 1);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testSameData_noChanges() throws Exception {
+        detector.newData(adapter, cats(1, 2), false);
+        reset(adapter);
+
+        detector.newData(adapter, cats(1, 2), false);
+
+        verifyNoMoreInteractions(adapter);
+    }
+}
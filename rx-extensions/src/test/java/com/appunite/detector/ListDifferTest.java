@@ -0,0 +1,531 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.detector;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class ListDifferTest {
+
+    private ListDiffer<Cat, Cat> differ;
+    private ChangesDetector.ChangesAdapter adapter;
+
+    static class Cat {
+        final int id;
+        final String name;
+
+        Cat(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        Cat(int id) {
+            this(id, "cat" + id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Cat)) return false;
+            final Cat cat = (Cat) o;
+            return id == cat.id && Objects.equal(name, cat.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(id, name);
+        }
+
+        @Override
+        public String toString() {
+            return "Cat{id=" + id + ", name='" + name + "'}";
+        }
+    }
+
+    static class CatDetector implements ListDiffer.Detector<Cat, Cat> {
+        @Nonnull
+        @Override
+        public Cat apply(@Nonnull Cat item) {
+            return item;
+        }
+
+        @Override
+        public int matchesHashCode(@Nonnull Cat item) {
+            return item.id;
+        }
+
+        @Override
+        public boolean matches(@Nonnull Cat item, @Nonnull Cat newOne) {
+            return item.id == newOne.id;
+        }
+
+        @Override
+        public boolean same(@Nonnull Cat item, @Nonnull Cat newOne) {
+            return item.id == newOne.id && Objects.equal(item.name, newOne.name);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        differ = new ListDiffer<>(new CatDetector());
+        adapter = mock(ChangesDetector.ChangesAdapter.class);
+    }
+
+    @Test
+    public void testSameLists_noChanges() throws Exception {
+        final DiffResult result = differ.diff(cats(1, 2, 3), cats(1, 2, 3), false);
+
+        assert_().that(result.isEmpty()).isTrue();
+        result.dispatchTo(adapter);
+        verifyZeroInteractions(adapter);
+    }
+
+    @Test
+    public void testFromEmpty_rangeInserted() throws Exception {
+        differ.diff(cats(), cats(1, 2, 3), false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemRangeInserted(0, 3);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testToEmpty_rangeRemoved() throws Exception {
+        differ.diff(cats(1, 2, 3), cats(), false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemRangeRemoved(0, 3);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testRemovedRanges_areRemovedFromEnd() throws Exception {
+        differ.diff(cats(1, 2, 3, 4, 5), cats(1, 4), false).dispatchTo(adapter);
+
+        final InOrder inOrder = inOrder(adapter);
+        inOrder.verify(adapter).notifyItemRangeRemoved(4, 1);
+        inOrder.verify(adapter).notifyItemRangeRemoved(1, 2);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testInsertedInMiddle_rangeInserted() throws Exception {
+        differ.diff(cats(1, 4), cats(1, 2, 3, 4), false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemRangeInserted(1, 2);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testChangedItems_rangeChanged() throws Exception {
+        final List<Cat> newCats = ImmutableList.of(new Cat(1), new Cat(2, "two"), new Cat(3, "three"), new Cat(4));
+
+        differ.diff(cats(1, 2, 3, 4), newCats, false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemRangeChanged(1, 2);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testForce_allItemsChanged() throws Exception {
+        differ.diff(cats(1, 2), cats(1, 2, 3), true).dispatchTo(adapter);
+
+        final InOrder inOrder = inOrder(adapter);
+        inOrder.verify(adapter).notifyItemRangeInserted(2, 1);
+        inOrder.verify(adapter).notifyItemRangeChanged(0, 2);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testSwapped_itemMoved() throws Exception {
+        differ.diff(cats(1, 2), cats(2, 1), false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemMoved(1, 0);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testMovedAndChanged_changeIsReportedAtNewPosition() throws Exception {
+        final List<Cat> newCats = ImmutableList.of(new Cat(3, "three"), new Cat(1), new Cat(2));
+
+        differ.diff(cats(1, 2, 3), newCats, false).dispatchTo(adapter);
+
+        final InOrder inOrder = inOrder(adapter);
+        inOrder.verify(adapter).notifyItemMoved(2, 0);
+        inOrder.verify(adapter).notifyItemRangeChanged(0, 1);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testDuplicatedItems_areMatchedInOrder() throws Exception {
+        final List<Cat> oldCats = ImmutableList.of(new Cat(1, "a"), new Cat(1, "b"));
+        final List<Cat> newCats = ImmutableList.of(new Cat(1, "a"), new Cat(1, "b"), new Cat(1, "c"));
+
+        differ.diff(oldCats, newCats, false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemRangeInserted(2, 1);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testHashCollisions_itemsAreMatchedByDetector() throws Exception {
+        final ListDiffer<Cat, Cat> collidingDiffer = new ListDiffer<>(new CatDetector() {
+            @Override
+            public int matchesHashCode(@Nonnull Cat item) {
+                return 0;
+            }
+        });
+
+        collidingDiffer.diff(cats(1, 2, 3), cats(3, 1, 4), false).dispatchTo(adapter);
+
+        final InOrder inOrder = inOrder(adapter);
+        inOrder.verify(adapter).notifyItemRangeRemoved(1, 1);
+        inOrder.verify(adapter).notifyItemMoved(1, 0);
+        inOrder.verify(adapter).notifyItemRangeInserted(2, 1);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testAppendedPage_singleRangeInserted() throws Exception {
+        final List<Cat> oldCats = cats(1, 2, 3);
+        final List<Cat> newCats = new ArrayList<>(oldCats);
+        newCats.addAll(cats(4, 5));
+
+        differ.diff(oldCats, newCats, false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemRangeInserted(3, 2);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testAppendedPage_detectorIsNotCalledForSameInstances() throws Exception {
+        final CountingDetector detector = new CountingDetector();
+        final List<Cat> oldCats = cats(1, 2, 3);
+        final List<Cat> newCats = new ArrayList<>(oldCats);
+        newCats.addAll(cats(4, 5));
+
+        new ListDiffer<>(detector).diff(oldCats, newCats, false);
+
+        assert_().that(detector.calls).isEqualTo(0);
+    }
+
+    @Test
+    public void testAppendedPageWithNewInstances_singleRangeInserted() throws Exception {
+        differ.diff(cats(1, 2, 3), cats(1, 2, 3, 4, 5), false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemRangeInserted(3, 2);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testPrependedItems_singleRangeInserted() throws Exception {
+        differ.diff(cats(3, 4, 5), cats(1, 2, 3, 4, 5), false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemRangeInserted(0, 2);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testChangesBetweenUnchangedHeadAndTail_positionsIncludeHead() throws Exception {
+        differ.diff(cats(1, 2, 3, 4, 5), cats(1, 2, 4, 3, 6, 5), false).dispatchTo(adapter);
+
+        final InOrder inOrder = inOrder(adapter);
+        inOrder.verify(adapter).notifyItemMoved(3, 2);
+        inOrder.verify(adapter).notifyItemRangeInserted(4, 1);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testFirstItemMovedToEnd_singleMove() throws Exception {
+        differ.diff(cats(1, 2, 3, 4, 5), cats(2, 3, 4, 5, 1), false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemMoved(0, 4);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testLastItemMovedToFront_singleMove() throws Exception {
+        differ.diff(cats(1, 2, 3, 4, 5), cats(5, 1, 2, 3, 4), false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemMoved(4, 0);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testItemsMovedBetweenStayingItems_onlyThemAreMoved() throws Exception {
+        differ.diff(cats(1, 2, 3, 4, 5, 6), cats(4, 1, 2, 6, 3, 5), false).dispatchTo(adapter);
+
+        final InOrder inOrder = inOrder(adapter);
+        inOrder.verify(adapter).notifyItemMoved(3, 0);
+        inOrder.verify(adapter).notifyItemMoved(5, 3);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testRandomReorders_minimalNumberOfMoves() throws Exception {
+        final Random random = new Random(0);
+        for (int run = 0; run < 200; run++) {
+            final List<Cat> oldCats = new ArrayList<>();
+            for (int id = 0; id < 30; id++) {
+                oldCats.add(new Cat(id));
+            }
+            final List<Cat> newCats = new ArrayList<>(oldCats);
+            Collections.shuffle(newCats, random);
+            final ListAdapter listAdapter = new ListAdapter(oldCats, newCats);
+
+            differ.diff(oldCats, newCats, false).dispatchTo(listAdapter);
+
+            assert_().that(listAdapter.items).isEqualTo(newCats);
+            assert_().that(listAdapter.moves).isEqualTo(newCats.size() - longestIncreasingIds(newCats));
+        }
+    }
+
+    @Test
+    public void testIdDetector_matchesCalledOnlyForItemsWithTheSameId() throws Exception {
+        final CountingIdDetector detector = new CountingIdDetector();
+        final List<Cat> oldCats = cats(1, 2, 3, 4, 5);
+        final List<Cat> newCats = cats(5, 4, 3, 2, 1);
+        final ListAdapter listAdapter = new ListAdapter(oldCats, newCats);
+
+        new ListDiffer<>(detector).diff(oldCats, newCats, false).dispatchTo(listAdapter);
+
+        // first and last items are compared when looking for unchanged head and tail
+        assert_().that(detector.matchesCalls).isEqualTo(5 + 2);
+        assert_().that(listAdapter.items).isEqualTo(newCats);
+        assert_().that(listAdapter.moves).isEqualTo(4);
+    }
+
+    @Test
+    public void testIdDetector_collidingIdsOfDifferentItems_removedAndInserted() throws Exception {
+        final CountingIdDetector detector = new CountingIdDetector() {
+            @Override
+            public long matchesId(@Nonnull Cat item) {
+                return 1;
+            }
+        };
+        final List<Cat> oldCats = cats(1, 3);
+        final List<Cat> newCats = cats(1, 2);
+
+        new ListDiffer<>(detector).diff(oldCats, newCats, false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemRangeRemoved(1, 1);
+        verify(adapter).notifyItemRangeInserted(1, 1);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testIdDetector_duplicatedIdsAreComparedByMatches() throws Exception {
+        final CountingIdDetector detector = new CountingIdDetector() {
+            @Override
+            public boolean matches(@Nonnull Cat item, @Nonnull Cat newOne) {
+                return super.matches(item, newOne) && item.name.equals(newOne.name);
+            }
+        };
+        final List<Cat> oldCats = ImmutableList.of(new Cat(1, "a"), new Cat(1, "b"));
+        final List<Cat> newCats = ImmutableList.of(new Cat(1, "b"), new Cat(1, "a"));
+
+        new ListDiffer<>(detector).diff(oldCats, newCats, false).dispatchTo(adapter);
+
+        verify(adapter).notifyItemMoved(1, 0);
+        verifyNoMoreInteractions(adapter);
+    }
+
+    @Test
+    public void testIdDetectorRandomLists_changesTransformOldListToNewList() throws Exception {
+        final ListDiffer<Cat, Cat> idDiffer = new ListDiffer<>(new CountingIdDetector());
+        final Random random = new Random(1);
+        for (int run = 0; run < 500; run++) {
+            final List<Cat> oldCats = randomCats(random);
+            final List<Cat> newCats = random.nextBoolean() ? randomCats(random) : edited(random, oldCats);
+            final ListAdapter listAdapter = new ListAdapter(oldCats, newCats);
+
+            idDiffer.diff(oldCats, newCats, false).dispatchTo(listAdapter);
+
+            assert_().withFailureMessage(oldCats + " -> " + newCats)
+                    .that(listAdapter.items).isEqualTo(newCats);
+        }
+    }
+
+    @Test
+    public void testRandomLists_changesTransformOldListToNewList() throws Exception {
+        final Random random = new Random(0);
+        for (int run = 0; run < 500; run++) {
+            final List<Cat> oldCats = randomCats(random);
+            final List<Cat> newCats = random.nextBoolean() ? randomCats(random) : edited(random, oldCats);
+            final ListAdapter listAdapter = new ListAdapter(oldCats, newCats);
+
+            differ.diff(oldCats, newCats, false).dispatchTo(listAdapter);
+
+            assert_().withFailureMessage(oldCats + " -> " + newCats)
+                    .that(listAdapter.items).isEqualTo(newCats);
+        }
+    }
+
+    @Nonnull
+    static List<Cat> cats(int... ids) {
+        final List<Cat> cats = new ArrayList<>();
+        for (int id : ids) {
+            cats.add(new Cat(id));
+        }
+        return cats;
+    }
+
+    @Nonnull
+    private static List<Cat> randomCats(@Nonnull Random random) {
+        final int size = random.nextInt(20);
+        final List<Cat> cats = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            final int id = random.nextInt(15);
+            cats.add(new Cat(id, random.nextInt(4) == 0 ? "changed" : "cat" + id));
+        }
+        return cats;
+    }
+
+    static class CountingDetector extends CatDetector {
+        int calls;
+
+        @Override
+        public int matchesHashCode(@Nonnull Cat item) {
+            calls += 1;
+            return super.matchesHashCode(item);
+        }
+
+        @Override
+        public boolean matches(@Nonnull Cat item, @Nonnull Cat newOne) {
+            calls += 1;
+            return super.matches(item, newOne);
+        }
+
+        @Override
+        public boolean same(@Nonnull Cat item, @Nonnull Cat newOne) {
+            calls += 1;
+            return super.same(item, newOne);
+        }
+    }
+
+    private static int longestIncreasingIds(@Nonnull List<Cat> cats) {
+        final int[] lengths = new int[cats.size()];
+        int longest = 0;
+        for (int i = 0; i < cats.size(); i++) {
+            lengths[i] = 1;
+            for (int j = 0; j < i; j++) {
+                if (cats.get(j).id < cats.get(i).id) {
+                    lengths[i] = Math.max(lengths[i], lengths[j] + 1);
+                }
+            }
+            longest = Math.max(longest, lengths[i]);
+        }
+        return longest;
+    }
+
+    /**
+     * @return list with a few random edits, so it shares head and tail with old list
+     */
+    @Nonnull
+    private static List<Cat> edited(@Nonnull Random random, @Nonnull List<Cat> oldCats) {
+        final List<Cat> cats = new ArrayList<>(oldCats);
+        final int edits = random.nextInt(3);
+        for (int i = 0; i < edits; i++) {
+            final int position = random.nextInt(cats.size() + 1);
+            if (random.nextBoolean() || cats.isEmpty()) {
+                cats.add(position, new Cat(random.nextInt(15)));
+            } else {
+                cats.remove(Math.min(position, cats.size() - 1));
+            }
+        }
+        return cats;
+    }
+
+    static class CountingIdDetector extends CatDetector implements ListDiffer.IdDetector<Cat, Cat> {
+        int matchesCalls;
+
+        @Override
+        public long matchesId(@Nonnull Cat item) {
+            return item.id;
+        }
+
+        @Override
+        public boolean matches(@Nonnull Cat item, @Nonnull Cat newOne) {
+            matchesCalls += 1;
+            return super.matches(item, newOne);
+        }
+    }
+
+    /**
+     * Applies changes to list, inserted and changed items are taken from new list, so result
+     * is equal to new list only if positions are correct
+     */
+    static class ListAdapter implements ChangesDetector.ChangesAdapter {
+        @Nonnull
+        final List<Cat> items;
+        @Nonnull
+        private final List<Cat> newItems;
+        int moves;
+
+        ListAdapter(@Nonnull List<Cat> oldItems, @Nonnull List<Cat> newItems) {
+            this.items = new ArrayList<>(oldItems);
+            this.newItems = newItems;
+        }
+
+        @Override
+        public void notifyItemRangeInserted(int start, int count) {
+            assert_().that(count).isGreaterThan(0);
+            for (int i = 0; i < count; i++) {
+                items.add(start + i, newItems.get(start + i));
+            }
+        }
+
+        @Override
+        public void notifyItemRangeChanged(int start, int count) {
+            assert_().that(count).isGreaterThan(0);
+            for (int i = start; i < start + count; i++) {
+                assert_().that(items.get(i).id).isEqualTo(newItems.get(i).id);
+                items.set(i, newItems.get(i));
+            }
+        }
+
+        @Override
+        public void notifyItemRangeRemoved(int start, int count) {
+            assert_().that(count).isGreaterThan(0);
+            for (int i = 0; i < count; i++) {
+                items.remove(start);
+            }
+        }
+
+        @Override
+        public void notifyItemMoved(int fromPosition, int toPosition) {
+            moves += 1;
+            items.add(toPosition, items.remove(fromPosition));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.detector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static com.appunite.detector.ListDifferTest.Cat;
+import static com.appunite.detector.ListDifferTest.cats;
+import static com.google.common.truth.Truth.assert_;
+
+public class ListDifferTransformerTest {
+
+    private TestScheduler scheduler;
+    private PublishSubject<List<Cat>> lists;
+    private Observable<DiffedList<Cat>> diffed;
+    private TestSubscriber<DiffedList<Cat>> subscriber;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TestScheduler();
+        lists = PublishSubject.create();
+        subscriber = new TestSubscriber<>();
+        diffed = lists.compose(new ListDiffer<>(new ListDifferTest.CatDetector()).transformer(scheduler));
+        diffed.subscribe(subscriber);
+    }
+
+    @Test
+    public void testBeforeSchedulerRuns_nothingIsEmitted() throws Exception {
+        lists.onNext(cats(1, 2));
+
+        subscriber.assertNoValues();
+    }
+
+    @Test
+    public void testFirstList_isComparedWithEmptyList() throws Exception {
+        final List<Cat> cats = cats(1, 2);
+        lists.onNext(cats);
+        scheduler.triggerActions();
+
+        subscriber.assertValue(new DiffedList<>(cats, new DiffResult.Builder().inserted(0, 2).build()));
+    }
+
+    @Test
+    public void testNextList_isComparedWithPreviousList() throws Exception {
+        lists.onNext(cats(1, 2));
+        scheduler.triggerActions();
+
+        final List<Cat> cats = cats(1, 2, 3);
+        lists.onNext(cats);
+        scheduler.triggerActions();
+
+        assert_().that(subscriber.getOnNextEvents()).hasSize(2);
+        assert_().that(subscriber.getOnNextEvents().get(1))
+                .isEqualTo(new DiffedList<>(cats, new DiffResult.Builder().inserted(2, 1).build()));
+    }
+
+    @Test
+    public void testWhenNewListArrivesBeforeDiffIsComputed_staleDiffIsNotEmitted() throws Exception {
+        lists.onNext(cats(1, 2));
+        final List<Cat> cats = cats(3);
+        lists.onNext(cats);
+        scheduler.triggerActions();
+
+        subscriber.assertValue(new DiffedList<>(cats, new DiffResult.Builder().inserted(0, 1).build()));
+    }
+
+    @Test
+    public void testAfterStaleDiff_nextListIsComparedWithEmittedList() throws Exception {
+        lists.onNext(cats(1));
+        scheduler.triggerActions();
+        lists.onNext(cats(1, 2));
+        lists.onNext(cats(1, 3));
+        scheduler.triggerActions();
+
+        assert_().that(subscriber.getOnNextEvents()).hasSize(2);
+        assert_().that(subscriber.getOnNextEvents().get(1).diffResult())
+                .isEqualTo(new DiffResult.Builder().inserted(1, 1).build());
+    }
+
+    @Test
+    public void testEverySubscriber_hasOwnPreviousList() throws Exception {
+        lists.onNext(cats(1));
+        scheduler.triggerActions();
+
+        final TestSubscriber<DiffedList<Cat>> second = new TestSubscriber<>();
+        diffed.subscribe(second);
+        lists.onNext(cats(1, 2));
+        scheduler.triggerActions();
+
+        second.assertValue(new DiffedList<>(cats(1, 2), new DiffResult.Builder().inserted(0, 2).build()));
+    }
+
+    @Test
+    public void testWhenSourceCompletes_completesAfterLastDiff() throws Exception {
+        lists.onNext(cats(1));
+        lists.onCompleted();
+        subscriber.assertNotCompleted();
+
+        scheduler.triggerActions();
+
+        subscriber.assertValueCount(1);
+        subscriber.assertCompleted();
+    }
+}
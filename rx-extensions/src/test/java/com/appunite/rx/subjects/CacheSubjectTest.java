@@ -25,11 +25,15 @@ import java.io.IOException;
 
 import rx.Observer;
 import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
 
 import static com.google.common.truth.Truth.assert_;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class CacheSubjectTest {
 
@@ -185,4 +189,180 @@ public class CacheSubjectTest {
 
         assert_().that(subject.hasObservers()).isFalse();
     }
+
+    @Test
+    public void testWhenOneOfManySubscribersUnsubscribe_othersStillReceiveData() throws Exception {
+        final CacheSubject<String> subject = CacheSubject.create(new CacheSubject.InMemoryCache<String>(null));
+        final TestSubscriber<String> first = new TestSubscriber<>();
+        final TestSubscriber<String> second = new TestSubscriber<>();
+        final TestSubscriber<String> third = new TestSubscriber<>();
+        subject.subscribe(first);
+        subject.subscribe(second);
+        subject.subscribe(third);
+
+        second.unsubscribe();
+        subject.onNext("krowa");
+
+        assert_().that(first.getOnNextEvents()).containsExactly("krowa");
+        assert_().that(second.getOnNextEvents()).isEmpty();
+        assert_().that(third.getOnNextEvents()).containsExactly("krowa");
+    }
+
+    @Test
+    public void testWhenSubscriberUnsubscribeDuringEmission_emissionIsNotBroken() throws Exception {
+        final CacheSubject<String> subject = CacheSubject.create(new CacheSubject.InMemoryCache<String>(null));
+        final TestSubscriber<String> first = new TestSubscriber<String>() {
+            @Override
+            public void onNext(String s) {
+                super.onNext(s);
+                unsubscribe();
+            }
+        };
+        final TestSubscriber<String> second = new TestSubscriber<>();
+        subject.subscribe(first);
+        subject.subscribe(second);
+
+        subject.onNext("krowa");
+        subject.onNext("krowa2");
+
+        assert_().that(first.getOnNextEvents()).containsExactly("krowa");
+        assert_().that(second.getOnNextEvents()).containsExactly("krowa", "krowa2");
+    }
+
+    @Test
+    public void testSubscribeWithReadScheduler_cacheIsReadOnScheduler() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<String> subscriber = new TestSubscriber<>();
+        final CacheSubject<String> subject = CacheSubject.create(
+                new CacheSubject.InMemoryCache<>("krowa"), scheduler);
+
+        subject.subscribe(subscriber);
+        assert_().that(subscriber.getOnNextEvents()).isEmpty();
+
+        scheduler.triggerActions();
+        assert_().that(subscriber.getOnNextEvents()).containsExactly("krowa");
+    }
+
+    @Test
+    public void testSubscribeTwiceWithReadScheduler_cacheIsReadOnce() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        @SuppressWarnings("unchecked")
+        final CacheSubject.CacheCreator<String> cacheCreator = mock(CacheSubject.CacheCreator.class);
+        when(cacheCreator.readFromCache()).thenReturn("krowa");
+        final CacheSubject<String> subject = CacheSubject.create(cacheCreator, scheduler);
+        subject.subscribe(new TestSubscriber<String>());
+        scheduler.triggerActions();
+
+        final TestSubscriber<String> subscriber = new TestSubscriber<>();
+        subject.subscribe(subscriber);
+
+        assert_().that(subscriber.getOnNextEvents()).containsExactly("krowa");
+        verify(cacheCreator, times(1)).readFromCache();
+    }
+
+    @Test
+    public void testNewValueBeforeCacheIsRead_oldCacheValueIsNotEmitted() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<String> subscriber = new TestSubscriber<>();
+        final CacheSubject<String> subject = CacheSubject.create(
+                new CacheSubject.InMemoryCache<>("krowa"), scheduler);
+        subject.subscribe(subscriber);
+
+        subject.onNext("pies");
+        scheduler.triggerActions();
+
+        assert_().that(subscriber.getOnNextEvents()).containsExactly("pies");
+    }
+
+    @Test
+    public void testUnsubscribeBeforeCacheIsRead_doNotEmitValue() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<String> subscriber = new TestSubscriber<>();
+        final CacheSubject<String> subject = CacheSubject.create(
+                new CacheSubject.InMemoryCache<>("krowa"), scheduler);
+        subject.subscribe(subscriber);
+
+        subscriber.unsubscribe();
+        scheduler.triggerActions();
+
+        assert_().that(subscriber.getOnNextEvents()).isEmpty();
+        assert_().that(subject.hasObservers()).isFalse();
+    }
+
+    @Test
+    public void testLatestWhenNothingRequested_doNotEmit() throws Exception {
+        final TestSubscriber<String> subscriber = new TestSubscriber<>(0);
+        final CacheSubject<String> subject = CacheSubject.createLatest(new CacheSubject.InMemoryCache<>("krowa"));
+        subject.subscribe(subscriber);
+
+        subject.onNext("pies");
+
+        assert_().that(subscriber.getOnNextEvents()).isEmpty();
+    }
+
+    @Test
+    public void testLatestWhenRequested_emitOnlyNewestValue() throws Exception {
+        final TestSubscriber<String> subscriber = new TestSubscriber<>(0);
+        final CacheSubject<String> subject = CacheSubject.createLatest(new CacheSubject.InMemoryCache<>("krowa"));
+        subject.subscribe(subscriber);
+        subject.onNext("pies");
+        subject.onNext("kot");
+
+        subscriber.requestMore(1);
+
+        assert_().that(subscriber.getOnNextEvents()).containsExactly("kot");
+    }
+
+    @Test
+    public void testLatestWhenRequestedMore_emitNextValuesImmediately() throws Exception {
+        final TestSubscriber<String> subscriber = new TestSubscriber<>(2);
+        final CacheSubject<String> subject = CacheSubject.createLatest(new CacheSubject.InMemoryCache<>("krowa"));
+        subject.subscribe(subscriber);
+
+        subject.onNext("pies");
+        subject.onNext("kot");
+
+        assert_().that(subscriber.getOnNextEvents()).containsExactly("krowa", "pies").inOrder();
+    }
+
+    @Test
+    public void testLatestWithoutBackpressure_emitAllValues() throws Exception {
+        final TestSubscriber<String> subscriber = new TestSubscriber<>();
+        final CacheSubject<String> subject = CacheSubject.createLatest(new CacheSubject.InMemoryCache<>("krowa"));
+        subject.subscribe(subscriber);
+
+        subject.onNext("pies");
+        subject.onNext("kot");
+
+        assert_().that(subscriber.getOnNextEvents()).containsExactly("krowa", "pies", "kot").inOrder();
+    }
+
+    @Test
+    public void testLatestOnCompletedWithPendingValue_completeAfterValueIsRequested() throws Exception {
+        final TestSubscriber<String> subscriber = new TestSubscriber<>(0);
+        final CacheSubject<String> subject = CacheSubject.createLatest(new CacheSubject.InMemoryCache<>("krowa"));
+        subject.subscribe(subscriber);
+
+        subject.onCompleted();
+        subscriber.assertNotCompleted();
+        subscriber.requestMore(1);
+
+        subscriber.assertValue("krowa");
+        subscriber.assertCompleted();
+    }
+
+    @Test
+    public void testLatestWithReadScheduler_cachedValueIsEmittedWhenRequested() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<String> subscriber = new TestSubscriber<>(0);
+        final CacheSubject<String> subject = CacheSubject.createLatest(
+                new CacheSubject.InMemoryCache<>("krowa"), scheduler);
+        subject.subscribe(subscriber);
+        scheduler.triggerActions();
+        assert_().that(subscriber.getOnNextEvents()).isEmpty();
+
+        subscriber.requestMore(1);
+
+        assert_().that(subscriber.getOnNextEvents()).containsExactly("krowa");
+    }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.subjects;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import rx.schedulers.TestScheduler;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class TieredCacheTest {
+
+    private TestScheduler scheduler;
+    private TieredCache tieredCache;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TestScheduler();
+        tieredCache = new TieredCache(2, 3, scheduler);
+    }
+
+    @Test
+    public void testWhenMemoryIsEmpty_readFromPersistentTier() throws Exception {
+        final RecordingCache disk = new RecordingCache("krowa");
+        final CacheSubject.CacheCreator<String> cache = tieredCache.cacheCreator("key", disk);
+
+        assert_().that(cache.readFromCache()).isEqualTo("krowa");
+        assert_().that(disk.reads).isEqualTo(1);
+    }
+
+    @Test
+    public void testWhenReadTwice_valueIsPromotedToMemory() throws Exception {
+        final RecordingCache disk = new RecordingCache("krowa");
+        final CacheSubject.CacheCreator<String> cache = tieredCache.cacheCreator("key", disk);
+
+        cache.readFromCache();
+        assert_().that(cache.readFromCache()).isEqualTo("krowa");
+
+        assert_().that(disk.reads).isEqualTo(1);
+        assert_().that(tieredCache.memoryWeight()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testWhenWrite_memoryIsUpdatedImmediatelyAndDiskInBackground() throws Exception {
+        final RecordingCache disk = new RecordingCache(null);
+        final CacheSubject.CacheCreator<String> cache = tieredCache.cacheCreator("key", disk);
+
+        cache.writeToCache("krowa");
+
+        assert_().that(cache.readFromCache()).isEqualTo("krowa");
+        assert_().that(disk.writes).isEmpty();
+        scheduler.triggerActions();
+        assert_().that(disk.writes).containsExactly("krowa");
+        assert_().that(disk.reads).isEqualTo(0);
+    }
+
+    @Test
+    public void testWhenMemoryBudgetIsExceeded_leastRecentlyUsedIsReadFromDisk() throws Exception {
+        final RecordingCache disk1 = new RecordingCache(null);
+        final CacheSubject.CacheCreator<String> cache1 = tieredCache.cacheCreator("key1", disk1);
+        final CacheSubject.CacheCreator<String> cache2 = tieredCache.cacheCreator("key2", new RecordingCache(null));
+        final CacheSubject.CacheCreator<String> cache3 = tieredCache.cacheCreator("key3", new RecordingCache(null));
+
+        cache1.writeToCache("krowa");
+        cache2.writeToCache("pies");
+        cache3.writeToCache("kot");
+        scheduler.triggerActions();
+
+        assert_().that(tieredCache.memoryWeight()).isEqualTo(2L);
+        assert_().that(cache1.readFromCache()).isEqualTo("krowa");
+        assert_().that(disk1.reads).isEqualTo(1);
+    }
+
+    @Test
+    public void testWhenPersistentBudgetIsExceeded_leastRecentlyUsedIsRemovedFromDisk() throws Exception {
+        final RecordingCache disk1 = new RecordingCache(null);
+        tieredCache.cacheCreator("key1", disk1).writeToCache("krowa");
+        tieredCache.cacheCreator("key2", new RecordingCache(null)).writeToCache("pies");
+        tieredCache.cacheCreator("key3", new RecordingCache(null)).writeToCache("kot");
+        tieredCache.cacheCreator("key4", new RecordingCache(null)).writeToCache("kura");
+        scheduler.triggerActions();
+
+        assert_().that(tieredCache.persistentWeight()).isEqualTo(3L);
+        assert_().that(disk1.readFromCache()).isNull();
+    }
+
+    @Test
+    public void testWhenWriteNull_valueIsRemovedFromBothTiers() throws Exception {
+        final RecordingCache disk = new RecordingCache(null);
+        final CacheSubject.CacheCreator<String> cache = tieredCache.cacheCreator("key", disk);
+        cache.writeToCache("krowa");
+
+        cache.writeToCache(null);
+        scheduler.triggerActions();
+
+        assert_().that(cache.readFromCache()).isNull();
+        assert_().that(tieredCache.memoryWeight()).isEqualTo(0L);
+        assert_().that(tieredCache.persistentWeight()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testWhenCacheIsCreatedTwiceForKey_memoryIsShared() throws Exception {
+        tieredCache.cacheCreator("key", new RecordingCache(null)).writeToCache("krowa");
+
+        final CacheSubject.CacheCreator<String> cache = tieredCache.cacheCreator("key", new RecordingCache(null));
+
+        assert_().that(cache.readFromCache()).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testFlush_writeAllPendingValues() throws Exception {
+        final RecordingCache disk = new RecordingCache(null);
+        tieredCache.cacheCreator("key", disk).writeToCache("krowa");
+
+        tieredCache.flush();
+
+        assert_().that(disk.writes).containsExactly("krowa");
+    }
+
+    private static class RecordingCache extends CacheSubject.InMemoryCache<String> {
+        private final List<String> writes = new ArrayList<>();
+        private int reads;
+
+        RecordingCache(@Nullable String cache) {
+            super(cache);
+        }
+
+        @Nullable
+        @Override
+        public String readFromCache() {
+            reads += 1;
+            return super.readFromCache();
+        }
+
+        @Override
+        public void writeToCache(@Nullable String data) {
+            writes.add(data);
+            super.writeToCache(data);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.appunite.rx.subjects;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import rx.functions.Action1;
+import rx.plugins.RxJavaHooks;
+import rx.schedulers.TestScheduler;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class WriteBehindCacheCreatorTest {
+
+    private TestScheduler scheduler;
+    private RecordingCache cache;
+    private WriteBehindCacheCreator<String> writeBehind;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TestScheduler();
+        cache = new RecordingCache("initial");
+        writeBehind = new WriteBehindCacheCreator<>(cache, scheduler);
+    }
+
+    @Test
+    public void testWhenNothingWasWritten_readFromUnderlyingCache() throws Exception {
+        assert_().that(writeBehind.readFromCache()).isEqualTo("initial");
+    }
+
+    @Test
+    public void testWhenWrite_underlyingCacheIsWrittenOnScheduler() throws Exception {
+        writeBehind.writeToCache("krowa");
+
+        assert_().that(cache.writes).isEmpty();
+        scheduler.triggerActions();
+        assert_().that(cache.writes).containsExactly("krowa");
+    }
+
+    @Test
+    public void testWhenWriteIsPending_latestValueIsRead() throws Exception {
+        writeBehind.writeToCache("krowa");
+
+        assert_().that(writeBehind.readFromCache()).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testWhenManyWritesArePending_onlyLatestIsWritten() throws Exception {
+        writeBehind.writeToCache("krowa1");
+        writeBehind.writeToCache("krowa2");
+        writeBehind.writeToCache("krowa3");
+        scheduler.triggerActions();
+
+        assert_().that(cache.writes).containsExactly("krowa3");
+        assert_().that(writeBehind.readFromCache()).isEqualTo("krowa3");
+    }
+
+    @Test
+    public void testWhenNullIsWritten_nullIsReadBeforeWrite() throws Exception {
+        writeBehind.writeToCache(null);
+
+        assert_().that(writeBehind.readFromCache()).isNull();
+    }
+
+    @Test
+    public void testFlush_writesPendingValueSynchronously() throws Exception {
+        writeBehind.writeToCache("krowa");
+
+        writeBehind.flush();
+
+        assert_().that(cache.writes).containsExactly("krowa");
+        scheduler.triggerActions();
+        assert_().that(cache.writes).containsExactly("krowa");
+    }
+
+    @Test
+    public void testWhenBackgroundWriteFails_errorIsNotPropagatedAndValueIsKept() throws Exception {
+        final List<Throwable> errors = new ArrayList<>();
+        RxJavaHooks.setOnError(new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                errors.add(throwable);
+            }
+        });
+        try {
+            cache.failures = 1;
+            writeBehind.writeToCache("krowa");
+
+            scheduler.triggerActions();
+
+            assert_().that(errors).isEmpty();
+            assert_().that(writeBehind.readFromCache()).isEqualTo("krowa");
+            assert_().that(cache.readFromCache()).isEqualTo("initial");
+        } finally {
+            RxJavaHooks.reset();
+        }
+    }
+
+    @Test
+    public void testWhenBackgroundWriteFails_writeIsRetriedWithBackoff() throws Exception {
+        cache.failures = 2;
+        writeBehind.writeToCache("krowa");
+        scheduler.triggerActions();
+
+        scheduler.advanceTimeBy(WriteBehindCacheCreator.INITIAL_RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        assert_().that(cache.writes).containsExactly("krowa", "krowa");
+
+        scheduler.advanceTimeBy(WriteBehindCacheCreator.INITIAL_RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        assert_().that(cache.writes).containsExactly("krowa", "krowa");
+
+        scheduler.advanceTimeBy(WriteBehindCacheCreator.INITIAL_RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        assert_().that(cache.writes).containsExactly("krowa", "krowa", "krowa");
+        assert_().that(cache.readFromCache()).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testWhenValueIsWrittenDuringBackoff_latestValueIsRetried() throws Exception {
+        cache.failures = 1;
+        writeBehind.writeToCache("krowa1");
+        scheduler.triggerActions();
+
+        writeBehind.writeToCache("krowa2");
+        scheduler.triggerActions();
+        assert_().that(cache.writes).containsExactly("krowa1");
+
+        scheduler.advanceTimeBy(WriteBehindCacheCreator.INITIAL_RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        assert_().that(cache.writes).containsExactly("krowa1", "krowa2");
+        assert_().that(writeBehind.readFromCache()).isEqualTo("krowa2");
+    }
+
+    @Test
+    public void testWhenFlushFails_errorIsThrownAndValueIsKept() throws Exception {
+        cache.failures = 1;
+        writeBehind.writeToCache("krowa");
+
+        try {
+            writeBehind.flush();
+            assert_().fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        assert_().that(writeBehind.readFromCache()).isEqualTo("krowa");
+    }
+
+    @Test
+    public void testWhenUsedWithCacheSubject_valuesAreStored() throws Exception {
+        final CacheSubject<String> subject = CacheSubject.create(writeBehind);
+
+        subject.onNext("krowa1");
+        subject.onNext("krowa2");
+        scheduler.triggerActions();
+
+        assert_().that(cache.writes).containsExactly("krowa2");
+    }
+
+    private static class RecordingCache extends CacheSubject.InMemoryCache<String> {
+        private final List<String> writes = new ArrayList<>();
+        private int failures;
+
+        RecordingCache(@Nullable String cache) {
+            super(cache);
+        }
+
+        @Override
+        public void writeToCache(@Nullable String data) {
+            writes.add(data);
+            if (failures > 0) {
+                failures -= 1;
+                throw new IllegalStateException("Write failed");
+            }
+            super.writeToCache(data);
+        }
+    }
+}